@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import net.lapismc.watchface.model.FaceLayout;
+import net.lapismc.watchface.model.TextBuffer;
+
+/**
+ * Draws the ambient face from glyph atlases built ahead of time, keeping the once a minute
+ * ambient wakeup as short as possible. On screens with burn in protection the time is drawn in
+ * outline so that most of its pixels stay off. The atlases only hold coverage, so the same
+ * glyphs serve the silent mode paints as well.
+ */
+final class AmbientRenderer {
+
+    private static final String TIME_GLYPHS = "0123456789:";
+    private static final String DATE_GLYPHS = "0123456789/ "
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final String BATTERY_GLYPHS = "0123456789%";
+
+    /* Laid out in screen coordinates, so it is kept apart from the layer's layout. */
+    private final FaceLayout mLayout = new FaceLayout();
+    private final GlyphAtlas mTime;
+    private final GlyphAtlas mDate;
+    private final GlyphAtlas mBattery;
+    private final GlyphAtlas mLowBattery;
+
+    AmbientRenderer(FaceTheme theme, boolean lowBit, boolean burnInProtection) {
+        int mode = lowBit ? FaceTheme.MODE_LOW_BIT_AMBIENT : FaceTheme.MODE_AMBIENT;
+        FaceTheme.PaintSet paints = theme.get(mode, false);
+        Paint timePaint = new Paint(paints.time.paint);
+        if (burnInProtection) {
+            timePaint.setStyle(Paint.Style.STROKE);
+            timePaint.setStrokeWidth(Math.max(1f, timePaint.getTextSize() / 40));
+        }
+        mTime = new GlyphAtlas(timePaint, TIME_GLYPHS);
+        mDate = new GlyphAtlas(paints.date.paint, DATE_GLYPHS);
+        mBattery = new GlyphAtlas(paints.battery.paint, BATTERY_GLYPHS);
+        mLowBattery = new GlyphAtlas(theme.get(mode, true).battery.paint, BATTERY_GLYPHS);
+    }
+
+    /**
+     * Draws the face with the colours of the given paint set, which should be one of the
+     * ambient modes this renderer was built for.
+     */
+    void draw(Canvas canvas, TextBuffer time, TextBuffer date, TextBuffer battery,
+              FaceTheme.PaintSet paints, float centerX, float centerY, int offsetX, int offsetY) {
+        GlyphAtlas batteryAtlas = paints.lowBattery ? mLowBattery : mBattery;
+        canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), paints.background);
+        mLayout.layout(centerX, centerY,
+                mTime.measure(time), mTime.getHeight(time),
+                mDate.measure(date), mDate.getHeight(date),
+                batteryAtlas.measure(battery), batteryAtlas.getHeight(battery));
+        //Laid out around the centre then shifted as a whole by the burn in offset
+        canvas.save();
+        canvas.translate(offsetX, offsetY);
+        mTime.draw(canvas, time, mLayout.getTimeX(), mLayout.getTimeY(), paints.time.paint);
+        mDate.draw(canvas, date, mLayout.getDateX(), mLayout.getDateY(), paints.date.paint);
+        batteryAtlas.draw(canvas, battery, mLayout.getBatteryX(), mLayout.getBatteryY(),
+                paints.battery.paint);
+        canvas.restore();
+    }
+
+    void recycle() {
+        mTime.recycle();
+        mDate.recycle();
+        mBattery.recycle();
+        mLowBattery.recycle();
+    }
+}
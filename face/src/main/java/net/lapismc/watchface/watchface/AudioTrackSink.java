@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.watchface;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+
+import net.lapismc.watchface.model.ChimeSink;
+import net.lapismc.watchface.model.PcmClip;
+
+/**
+ * Plays the chime through a static AudioTrack, so starting it is just a rewind of the buffer.
+ * It uses the media usage, like the MediaPlayer it replaced, so the media volume still controls
+ * the beep.
+ */
+final class AudioTrackSink implements ChimeSink {
+
+    private AudioTrack mTrack;
+
+    @Override
+    public boolean open(PcmClip clip) {
+        int channelMask = clip.channelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        AudioTrack track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(clip.sampleRate)
+                        .setChannelMask(channelMask)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STATIC)
+                .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                .setBufferSizeInBytes((int) clip.getByteCount())
+                .build();
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            return false;
+        }
+        track.write(clip.samples, 0, clip.sampleCount);
+        mTrack = track;
+        return true;
+    }
+
+    @Override
+    public void play(float volume) {
+        if (mTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+            mTrack.stop();
+        }
+        //Rewind the static buffer so the clip can be played again
+        mTrack.reloadStaticData();
+        mTrack.setVolume(volume);
+        mTrack.play();
+    }
+
+    @Override
+    public void close() {
+        mTrack.release();
+        mTrack = null;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+
+/**
+ * Publishes the battery level from the battery broadcasts.
+ */
+final class BatteryProvider implements DataProvider {
+
+    private final Context mContext;
+    private final FrameMetrics mMetrics;
+    private DataPipeline mPipeline;
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            publish(intent);
+        }
+    };
+    private boolean mRegistered;
+
+    BatteryProvider(Context context, FrameMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void start(DataPipeline pipeline, Handler handler) {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        mPipeline = pipeline;
+        //The battery broadcast is sticky, so the current state is returned straight away
+        mMetrics.recordServiceCall();
+        Intent sticky = mContext.registerReceiver(mReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED), null, handler);
+        if (sticky != null) {
+            publish(sticky);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!mRegistered) {
+            return;
+        }
+        mRegistered = false;
+        mMetrics.recordServiceCall();
+        mContext.unregisterReceiver(mReceiver);
+    }
+
+    private void publish(Intent intent) {
+        mPipeline.publishBattery(intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1));
+    }
+}
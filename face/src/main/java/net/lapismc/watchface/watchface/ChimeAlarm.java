@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.watchface;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.ArrayList;
+
+/**
+ * The hourly chime alarm, shared by every engine of the service. The framework can create a new
+ * engine before destroying the old one, so the alarm and its receiver are set up when the first
+ * engine needs them and only torn down when the last one is done. Each alarm is handed to the
+ * newest engine alone, so an overlap never chimes twice.
+ * <p>
+ * The receiver only accepts broadcasts from apps signed like this one, which in practice means
+ * our own alarm. Must only be used from the main thread.
+ */
+final class ChimeAlarm {
+
+    interface Listener {
+        /**
+         * Called when the alarm goes off. The alarm isn't set again until something sets it.
+         */
+        void onChimeAlarm();
+    }
+
+    private static final String ACTION_CHIME = "net.lapismc.watchface.action.CHIME";
+    /* A signature permission declared in the manifest, held by this app alone. */
+    private static final String PERMISSION_CHIME = "net.lapismc.watchface.permission.CHIME";
+
+    private final Context mContext;
+    private final FrameMetrics mMetrics;
+    /* The engines using the alarm, newest last. */
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!mListeners.isEmpty()) {
+                mListeners.get(mListeners.size() - 1).onChimeAlarm();
+            }
+        }
+    };
+    private AlarmManager mAlarmManager;
+    private PendingIntent mAlarmIntent;
+
+    ChimeAlarm(Context context, FrameMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Starts using the alarm, registering for it if this is the first engine to do so.
+     */
+    void acquire(Listener listener) {
+        if (mListeners.isEmpty()) {
+            if (mAlarmIntent == null) {
+                mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+                Intent intent = new Intent(ACTION_CHIME).setPackage(mContext.getPackageName());
+                mAlarmIntent = PendingIntent.getBroadcast(mContext, 0, intent,
+                        PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+            }
+            mMetrics.recordServiceCall();
+            mContext.registerReceiver(mReceiver, new IntentFilter(ACTION_CHIME),
+                    PERMISSION_CHIME, null);
+        }
+        mListeners.add(listener);
+    }
+
+    /**
+     * Stops using the alarm, cancelling it once no engine is left.
+     */
+    void release(Listener listener) {
+        if (!mListeners.remove(listener) || !mListeners.isEmpty()) {
+            return;
+        }
+        mMetrics.recordServiceCall();
+        mAlarmManager.cancel(mAlarmIntent);
+        mMetrics.recordServiceCall();
+        mContext.unregisterReceiver(mReceiver);
+    }
+
+    /**
+     * Sets the alarm for the given wall clock time, replacing any pending one. It is allowed to
+     * fire while the device is idle, as watches doze in ambient mode and a plain exact alarm
+     * would wait for the next maintenance window.
+     */
+    void set(long timeMs) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        mMetrics.recordServiceCall();
+        mAlarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, timeMs, mAlarmIntent);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import net.lapismc.watchface.model.ChimePlayer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays the chime's beep for one engine. Audio is started off the main thread so a slow player
+ * never holds up a frame.
+ */
+final class ChimeAudio {
+
+    private final ChimePlayer mPlayer;
+    private final ExecutorService mAudioExecutor = Executors.newSingleThreadExecutor();
+    private final Runnable mPlayBeep = new Runnable() {
+        @Override
+        public void run() {
+            mPlayer.play(0.1f);
+        }
+    };
+    private final Runnable mPrepareAudio = new Runnable() {
+        @Override
+        public void run() {
+            mPlayer.prepare();
+        }
+    };
+    private final Runnable mReleaseAudio = new Runnable() {
+        @Override
+        public void run() {
+            mPlayer.release();
+        }
+    };
+
+    ChimeAudio(ChimePlayer player) {
+        mPlayer = player;
+    }
+
+    void beep() {
+        mAudioExecutor.execute(mPlayBeep);
+    }
+
+    /**
+     * Gets the player ready in the background so the beep starts without delay.
+     */
+    void prepareAudio() {
+        mAudioExecutor.execute(mPrepareAudio);
+    }
+
+    /**
+     * Frees the audio output while it isn't needed. The player is prepared again on demand.
+     */
+    void releaseAudio() {
+        mAudioExecutor.execute(mReleaseAudio);
+    }
+
+    /**
+     * Frees the audio output for good.
+     */
+    void release() {
+        releaseAudio();
+        mAudioExecutor.shutdown();
+    }
+}
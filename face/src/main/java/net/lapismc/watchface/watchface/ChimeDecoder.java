@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import net.lapismc.watchface.model.PcmClip;
+import net.lapismc.watchface.model.PcmDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes a raw audio resource into PCM with MediaCodec.
+ */
+final class ChimeDecoder implements PcmDecoder {
+
+    private static final String TAG = "ChimeDecoder";
+    private static final long CODEC_TIMEOUT_US = 10000;
+    /* Give up if the codec makes no progress for this many polls in a row, a second or two. */
+    private static final int MAX_IDLE_POLLS = 100;
+
+    private final Context mContext;
+    private final int mResId;
+
+    ChimeDecoder(Context context, int resId) {
+        mContext = context;
+        mResId = resId;
+    }
+
+    @Override
+    public PcmClip decode() {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try (AssetFileDescriptor afd = mContext.getResources().openRawResourceFd(mResId)) {
+            extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) {
+                return null;
+            }
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            short[] pcm = new short[sampleRate * channelCount];
+            int count = 0;
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            int idlePolls = 0;
+            while (idlePolls < MAX_IDLE_POLLS) {
+                idlePolls++;
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        idlePolls = 0;
+                        ByteBuffer input = codec.getInputBuffer(inIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outFormat = codec.getOutputFormat();
+                    sampleRate = outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (outIndex >= 0) {
+                    idlePolls = 0;
+                    ByteBuffer output = codec.getOutputBuffer(outIndex);
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    ShortBuffer samples = output.order(ByteOrder.nativeOrder()).asShortBuffer();
+                    int length = samples.remaining();
+                    if (count + length > pcm.length) {
+                        pcm = Arrays.copyOf(pcm, Math.max(pcm.length * 2, count + length));
+                    }
+                    samples.get(pcm, count, length);
+                    count += length;
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            if (idlePolls == MAX_IDLE_POLLS) {
+                Log.w(TAG, "Codec stopped before the end of the stream, keeping " + count + " samples");
+            }
+            if (count == 0) {
+                return null;
+            }
+            //Trim to the decoded length so only the clip itself stays resident
+            return new PcmClip(Arrays.copyOf(pcm, count), count, sampleRate, channelCount);
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Couldn't decode the chime", e);
+            return null;
+        } finally {
+            if (codec != null) {
+                codec.stop();
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+}
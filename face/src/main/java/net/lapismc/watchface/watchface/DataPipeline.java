@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import net.lapismc.watchface.model.FaceData;
+import net.lapismc.watchface.model.FaceDataStore;
+
+import java.util.TimeZone;
+
+/**
+ * Runs the {@link DataProvider}s on a background thread and hands their data to the renderer as
+ * immutable {@link FaceData} snapshots, kept in a {@link FaceDataStore}. The renderer never
+ * blocks, it just reads whichever snapshot is current.
+ */
+final class DataPipeline implements FaceDataStore.Listener {
+
+    interface Listener {
+        /**
+         * Called on the main thread after a new snapshot has been published.
+         */
+        void onDataChanged(FaceData data);
+    }
+
+    private final DataProvider[] mProviders;
+    private final Listener mListener;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final FaceDataStore mStore;
+    private final Runnable mStartProviders = new Runnable() {
+        @Override
+        public void run() {
+            for (DataProvider provider : mProviders) {
+                provider.start(DataPipeline.this, mHandler);
+            }
+        }
+    };
+    private final Runnable mStopProviders = new Runnable() {
+        @Override
+        public void run() {
+            for (DataProvider provider : mProviders) {
+                provider.stop();
+            }
+        }
+    };
+    private final Runnable mNotifyListener = new Runnable() {
+        @Override
+        public void run() {
+            mListener.onDataChanged(mStore.takePending());
+        }
+    };
+
+    /**
+     * @param initial the data to show until the providers publish, such as that saved by an
+     *                earlier engine
+     */
+    DataPipeline(DataProvider[] providers, FaceData initial, Listener listener) {
+        mProviders = providers;
+        mStore = new FaceDataStore(initial, this);
+        mListener = listener;
+        mThread = new HandlerThread("DataPipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Returns the latest snapshot. This never blocks and is safe to call from any thread.
+     */
+    FaceData getLatest() {
+        return mStore.getLatest();
+    }
+
+    void start() {
+        mHandler.post(mStartProviders);
+    }
+
+    void stop() {
+        mHandler.post(mStopProviders);
+    }
+
+    /**
+     * Stops the providers and the background thread for good.
+     */
+    void release() {
+        stop();
+        mThread.quitSafely();
+        mMainHandler.removeCallbacks(mNotifyListener);
+    }
+
+    /**
+     * Publishes a new battery level. Safe to call from any thread.
+     */
+    void publishBattery(int level) {
+        mStore.publishBattery(level, System.nanoTime());
+    }
+
+    /**
+     * Publishes a new time zone. Safe to call from any thread.
+     */
+    void publishTimeZone(TimeZone timeZone) {
+        mStore.publishTimeZone(timeZone, System.nanoTime());
+    }
+
+    @Override
+    public void onDataPending() {
+        mMainHandler.post(mNotifyListener);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.os.Handler;
+
+/**
+ * A source of data for the face. Providers are started and stopped on the pipeline's background
+ * thread, and publish whatever they find out through the pipeline.
+ */
+interface DataProvider {
+
+    /**
+     * Starts providing data. Anything the provider listens for should be delivered on the
+     * given handler, which runs on the pipeline's background thread.
+     */
+    void start(DataPipeline pipeline, Handler handler);
+
+    void stop();
+}
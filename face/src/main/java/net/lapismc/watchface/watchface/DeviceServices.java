@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.watchface;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+
+import net.lapismc.watchface.model.ChimeWaveforms;
+import net.lapismc.watchface.model.SystemServices;
+
+/**
+ * The system services behind the face's schedule on a watch, shared by every engine of the
+ * service. Each call made is counted in the metrics. Must only be used from the main thread.
+ */
+final class DeviceServices implements SystemServices {
+
+    private final Context mContext;
+    private final ChimeAlarm mChimeAlarm;
+    private final FrameMetrics mMetrics;
+    private final AudioAttributes mAttributes =
+            new AudioAttributes.Builder().setUsage(AudioAttributes.USAGE_ALARM).build();
+    /* One waveform for each hour of the 12 hour clock, index 0 is 1 o'clock. */
+    private final VibrationEffect[] mEffects = new VibrationEffect[12];
+    private Vibrator mVibrator;
+
+    DeviceServices(Context context, ChimeAlarm chimeAlarm, FrameMetrics metrics) {
+        mContext = context;
+        mChimeAlarm = chimeAlarm;
+        mMetrics = metrics;
+        long[] timings = ChimeWaveforms.buildTimings();
+        for (int hour = 1; hour <= 12; hour++) {
+            mEffects[hour - 1] = VibrationEffect.createWaveform(timings, ChimeWaveforms.buildAmplitudes(hour), -1);
+        }
+    }
+
+    @Override
+    public void setChimeAlarm(long timeMs) {
+        mChimeAlarm.set(timeMs);
+    }
+
+    @Override
+    public void vibrateHour(int hour) {
+        //The service has no context until it is attached, so this waits for the first chime
+        if (mVibrator == null) {
+            mVibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
+        }
+        mMetrics.recordServiceCall();
+        mVibrator.vibrate(mEffects[hour - 1], mAttributes);
+    }
+}
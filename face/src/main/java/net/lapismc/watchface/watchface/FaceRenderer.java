@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.SurfaceHolder;
+
+import net.lapismc.watchface.model.Clock;
+import net.lapismc.watchface.model.FaceData;
+import net.lapismc.watchface.model.FaceLayout;
+import net.lapismc.watchface.model.HitRegions;
+import net.lapismc.watchface.model.TextBuffer;
+import net.lapismc.watchface.model.TimeSnapshot;
+import net.lapismc.watchface.model.WarmStartStore;
+
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Draws the face and owns everything it is drawn with. The renderer is only used from one thread
+ * at a time, the main thread when the framework draws or the {@link RenderThread} when it does,
+ * so state changes reach it as commands passed to {@link #apply} rather than by setting fields.
+ * <p>
+ * Commands carry their value in a long so they can be queued without allocating, the few that
+ * need an object take one that the sender no longer touches.
+ */
+final class FaceRenderer {
+
+    static final int CMD_AMBIENT = 0;
+    static final int CMD_CLEAN_DATE = 1;
+    /* The burn in offset, packed with pack(). */
+    static final int CMD_OFFSET = 2;
+    /* A tap changed the face at the given System.nanoTime(). */
+    static final int CMD_TAP = 3;
+    /* The screen properties, a mix of the SCREEN_ flags. */
+    static final int CMD_SCREEN = 4;
+    /* Our own fonts have loaded, the object is the FaceTheme using them. */
+    static final int CMD_THEME = 5;
+    /* The surface size, packed with pack(). */
+    static final int CMD_SURFACE_SIZE = 6;
+    /* The object is a WarmStartStore.State with the user's settings, to finish and save. */
+    static final int CMD_SAVE = 7;
+    static final int COMMAND_COUNT = 8;
+
+    static final int SCREEN_LOW_BIT = 1;
+    static final int SCREEN_BURN_IN_PROTECTION = 2;
+
+    /* Returned by drawHandFrame() when something other than the hand has changed. */
+    static final long NEEDS_FULL_FRAME = -1;
+
+    /* The second hand covers this fraction of the radius, out to the edge of the screen. */
+    private static final float SECOND_HAND_LENGTH = 0.2f;
+    /* Extra room around the hand when redrawing just its region, to cover the stroke. */
+    private static final int HAND_BOUNDS_PADDING = 4;
+
+    private final FrameMetrics mMetrics;
+    private final Clock mClock;
+    private final DataPipeline mDataPipeline;
+    private final SilentModeController mSilentMode;
+    private final WarmStartStore mWarmStartStore;
+    private final Executor mBackgroundExecutor;
+    /* The layer has this much room on each side to be shifted by the burn in offset. */
+    private final int mMargin;
+
+    private final TimeSnapshot mTime = new TimeSnapshot();
+    private boolean mCleanDate = true;
+    /* When the last tap that changed the face happened, or 0 once a frame has shown it. */
+    private long mPendingTapNanos;
+    /* Paints for every state, and the set the face is currently drawn with. */
+    private FaceTheme mTheme;
+    private FaceTheme.PaintSet mPaints;
+
+    /* Text is formatted into buffers so that drawing a frame never allocates. */
+    private final TextBuffer mBatteryText = new TextBuffer(8);
+
+    private boolean mAmbient;
+    /* Assume the screen is low-bit until told otherwise, so ambient is never anti-aliased. */
+    private boolean mLowBitAmbient = true;
+    private boolean mBurnInProtection;
+    private final Rect mHandBounds = new Rect();
+    private final Rect mNextHandBounds = new Rect();
+    private final Rect mHandDirty = new Rect();
+    /* Draws ambient frames once the device properties are known, null until then. */
+    private AmbientRenderer mAmbientRenderer;
+
+    private int mHeight;
+    private float mCenterX;
+    private float mCenterY;
+
+    /* The data last drawn. */
+    private long mDrawnDataSequence = -1;
+    private TimeZone mTimeZone;
+    private int mBatteryLevel = Integer.MIN_VALUE;
+    private boolean mLowBattery;
+
+    private int mOffsetX, mOffsetY;
+
+    private final FaceLayout mLayout = new FaceLayout();
+    /* Where the text was last drawn. Taps are looked up on the main thread, so it is locked. */
+    private final HitRegions mHitRegions = new HitRegions();
+    /* Centre of the content within the layer, which has room around the screen to shift. */
+    private float mLayerCenterX, mLayerCenterY;
+
+    /* Offscreen layer holding everything but the second hand, and the state it was drawn with. */
+    private Bitmap mLayerBitmap;
+    private Canvas mLayerCanvas;
+    private long mLayerMinute = Long.MIN_VALUE;
+    private FaceTheme.PaintSet mLayerPaints;
+    private boolean mLayerCleanDate;
+    private int mLayerBatteryLevel;
+    /* Whether the layer was drawn with our own fonts rather than the system font. */
+    private boolean mLayerStyled;
+
+    /*
+     * What the last engine saved is kept until the fonts load, so sizes measured with them can
+     * be used.
+     */
+    private WarmStartStore.State mRestored;
+
+    private boolean mFontsLoaded;
+    /* Startup metrics, in milliseconds since the engine was created, or -1 until they happen. */
+    private final long mCreateTime;
+    private long mTimeToFirstFrameMs = -1;
+    private long mTimeToStyledMs = -1;
+
+    FaceRenderer(FrameMetrics metrics, Clock clock, DataPipeline dataPipeline,
+                 SilentModeController silentMode, WarmStartStore warmStartStore,
+                 Executor backgroundExecutor, FaceTheme theme, int margin, long createTime) {
+        mMetrics = metrics;
+        mClock = clock;
+        mDataPipeline = dataPipeline;
+        mSilentMode = silentMode;
+        mWarmStartStore = warmStartStore;
+        mBackgroundExecutor = backgroundExecutor;
+        mTheme = theme;
+        mMargin = margin;
+        mCreateTime = createTime;
+    }
+
+    static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int unpackX(long value) {
+        return (int) (value >> 32);
+    }
+
+    private static int unpackY(long value) {
+        return (int) value;
+    }
+
+    /**
+     * Starts from what the last engine saved, before anything is drawn.
+     */
+    void restore(WarmStartStore.State saved) {
+        mRestored = saved;
+        mTimeZone = TimeZone.getTimeZone(saved.timeZoneId);
+        mTime.setTimeZone(mTimeZone);
+        //Sizes measured with our fonts can only be used once they have loaded
+        if (saved.hasSizes && !saved.styled) {
+            seedTextSizes(mTheme.get(saved.mode, saved.lowBattery), saved);
+        }
+    }
+
+    /**
+     * Applies a state change, on the thread that draws.
+     */
+    void apply(int command, long value, Object object) {
+        switch (command) {
+            case CMD_AMBIENT:
+                mAmbient = value != 0;
+                break;
+            case CMD_CLEAN_DATE:
+                mCleanDate = value != 0;
+                break;
+            case CMD_OFFSET:
+                mOffsetX = unpackX(value);
+                mOffsetY = unpackY(value);
+                break;
+            case CMD_TAP:
+                mPendingTapNanos = value;
+                break;
+            case CMD_SCREEN:
+                mLowBitAmbient = (value & SCREEN_LOW_BIT) != 0;
+                mBurnInProtection = (value & SCREEN_BURN_IN_PROTECTION) != 0;
+                rebuildAmbientRenderer();
+                break;
+            case CMD_THEME:
+                onFontsLoaded((FaceTheme) object);
+                break;
+            case CMD_SURFACE_SIZE:
+                onSurfaceChanged(unpackX(value), unpackY(value));
+                break;
+            case CMD_SAVE:
+                saveWarmStart((WarmStartStore.State) object);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    /**
+     * Returns which region of the face is at the given point in layer coordinates. Safe to call
+     * from any thread.
+     */
+    int findRegion(int x, int y) {
+        synchronized (mHitRegions) {
+            return mHitRegions.find(x, y);
+        }
+    }
+
+    void release() {
+        if (mAmbientRenderer != null) {
+            mAmbientRenderer.recycle();
+            mAmbientRenderer = null;
+        }
+        if (mLayerBitmap != null) {
+            mLayerBitmap.recycle();
+            mLayerBitmap = null;
+            mLayerCanvas = null;
+        }
+    }
+
+    private void onFontsLoaded(FaceTheme theme) {
+        mTheme = theme;
+        if (mAmbientRenderer != null) {
+            rebuildAmbientRenderer();
+        }
+        mFontsLoaded = true;
+        WarmStartStore.State restored = mRestored;
+        mRestored = null;
+        if (restored != null && restored.hasSizes && restored.styled) {
+            seedTextSizes(mTheme.get(restored.mode, restored.lowBattery), restored);
+        }
+        invalidateLayer();
+    }
+
+    /**
+     * Rasterizes the ambient glyphs for the current theme and screen properties. This is done
+     * up front so that ambient frames don't have to.
+     */
+    private void rebuildAmbientRenderer() {
+        if (mAmbientRenderer != null) {
+            mAmbientRenderer.recycle();
+        }
+        mAmbientRenderer = new AmbientRenderer(mTheme, mLowBitAmbient, mBurnInProtection);
+    }
+
+    private void onSurfaceChanged(int width, int height) {
+        mHeight = height;
+        /*
+         * Find the coordinates of the center point on the screen.
+         * Ignore the window insets so that, on round watches
+         * with a "chin", the watch face is centered on the entire screen,
+         * not just the usable portion.
+         */
+        mCenterX = width / 2f;
+        mCenterY = mHeight / 2f;
+
+        if (mLayerBitmap != null) {
+            mLayerBitmap.recycle();
+        }
+        //The layer has a margin on each side, so it still covers the screen when shifted
+        mLayerCenterX = mCenterX + mMargin;
+        mLayerCenterY = mCenterY + mMargin;
+        mLayerBitmap = Bitmap.createBitmap(width + mMargin * 2,
+                height + mMargin * 2, Bitmap.Config.ARGB_8888);
+        mLayerCanvas = new Canvas(mLayerBitmap);
+        invalidateLayer();
+    }
+
+    private void seedTextSizes(FaceTheme.PaintSet paints, WarmStartStore.State saved) {
+        paints.time.seed(saved.timeText, saved.timeWidth, saved.timeHeight);
+        paints.date.seed(saved.dateText, saved.dateWidth, saved.dateHeight);
+        paints.battery.seed(saved.batteryText, saved.batteryWidth, saved.batteryHeight);
+    }
+
+    /**
+     * Adds the data and the text sizes the layer was laid out with to the user's settings and
+     * saves them for the next engine. The state is copied here and written in the background.
+     */
+    private void saveWarmStart(final WarmStartStore.State state) {
+        state.batteryLevel = mBatteryLevel == Integer.MIN_VALUE ? -1 : mBatteryLevel;
+        state.timeZoneId = (mTimeZone != null ? mTimeZone : TimeZone.getDefault()).getID();
+        FaceTheme.PaintSet paints = mLayerPaints;
+        if (paints != null) {
+            state.hasSizes = true;
+            state.styled = mLayerStyled;
+            state.mode = paints.mode;
+            state.lowBattery = paints.lowBattery;
+            state.timeText.set(paints.time.getText());
+            state.timeWidth = paints.time.getWidth();
+            state.timeHeight = paints.time.getHeight();
+            state.dateText.set(paints.date.getText());
+            state.dateWidth = paints.date.getWidth();
+            state.dateHeight = paints.date.getHeight();
+            state.batteryText.set(paints.battery.getText());
+            state.batteryWidth = paints.battery.getWidth();
+            state.batteryHeight = paints.battery.getHeight();
+        }
+        try {
+            mBackgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mWarmStartStore.save(state);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //The engine stopped waiting for the render thread, the next one just starts cold
+        }
+    }
+
+    /**
+     * Draws a full frame.
+     */
+    void draw(Canvas canvas) {
+        long drawStart = System.nanoTime();
+        int mode = mAmbient ? FrameMetrics.MODE_AMBIENT
+                : mSilentMode.isSilent() ? FrameMetrics.MODE_SILENT : FrameMetrics.MODE_INTERACTIVE;
+        Tracer.trace(Tracer.FRAME_START, mode);
+        if (mTimeToStyledMs < 0) {
+            recordStartupFrame();
+        }
+
+        //Pick up the latest data, only reformatting the text when the level changes
+        FaceData data = mDataPipeline.getLatest();
+        long age = data.ageNanos(drawStart);
+        if (data.sequence != mDrawnDataSequence) {
+            mDrawnDataSequence = data.sequence;
+            if (age >= 0) {
+                mMetrics.recordPublishToDraw(age);
+            }
+        }
+        if (age >= 0) {
+            mMetrics.recordDataAge(age);
+        }
+        if (data.batteryLevel != mBatteryLevel) {
+            mBatteryLevel = data.batteryLevel;
+            mLowBattery = data.batteryLow;
+            mBatteryText.formatPercent(data.batteryLevel);
+        }
+        if (data.timeZone != null && !data.timeZone.equals(mTimeZone)) {
+            mTimeZone = data.timeZone;
+            mTime.setTimeZone(data.timeZone);
+            invalidateLayer();
+        }
+
+        long now = mClock.currentTimeMillis();
+        mTime.update(now);
+        mPaints = mTheme.get(themeMode(), mLowBattery);
+
+        //Everything but the second hand only changes once a minute, so it is drawn into a
+        //cached layer which is only rebuilt when something it shows has changed. Burn in
+        //offsets move the whole layer rather than laying it out again
+        int layerLeft = mOffsetX - mMargin;
+        int layerTop = mOffsetY - mMargin;
+        if (mAmbient && mAmbientRenderer != null) {
+            mAmbientRenderer.draw(canvas, mTime.getTimeText(), mTime.getDateText(mCleanDate),
+                    mBatteryText, mPaints, mCenterX, mCenterY, mOffsetX, mOffsetY);
+        } else if (mLayerBitmap == null) {
+            canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mPaints.background);
+            canvas.save();
+            canvas.translate(layerLeft, layerTop);
+            drawLayer(canvas, mCenterX + mMargin, mCenterY + mMargin);
+            canvas.restore();
+        } else {
+            long minute = mTime.getMinuteStart();
+            if (isLayerStale(minute)) {
+                mMetrics.recordLayerRebuild();
+                drawLayer(mLayerCanvas, mLayerCenterX, mLayerCenterY);
+                mLayerMinute = minute;
+                mLayerCleanDate = mCleanDate;
+                mLayerBatteryLevel = mBatteryLevel;
+                mLayerPaints = mPaints;
+                mLayerStyled = mFontsLoaded;
+            }
+            canvas.drawBitmap(mLayerBitmap, layerLeft, layerTop, null);
+        }
+
+        if (!mAmbient) {
+            drawSecondHand(canvas, mTime.getSeconds());
+        }
+
+        long drawEnd = System.nanoTime();
+        long drawTime = drawEnd - drawStart;
+        mMetrics.recordDraw(mode, drawTime);
+        Tracer.trace(Tracer.FRAME_END, drawTime / 1000);
+        if (mPendingTapNanos != 0) {
+            long tapLatency = drawEnd - mPendingTapNanos;
+            mPendingTapNanos = 0;
+            mMetrics.recordTapToFrame(tapLatency);
+            Tracer.trace(Tracer.TAP_TO_FRAME, tapLatency / 1000);
+        }
+    }
+
+    /**
+     * Redraws just the area around the second hand, returning how long it took, 0 if the surface
+     * wasn't available, or {@link #NEEDS_FULL_FRAME} if anything else has changed.
+     */
+    long drawHandFrame(SurfaceHolder holder) {
+        long drawStart = System.nanoTime();
+        long now = mClock.currentTimeMillis();
+        //Anything other than the hand changing needs a full frame
+        if (mLayerBitmap == null || mTime.update(now) || isLayerStale(mTime.getMinuteStart())
+                || mPendingTapNanos != 0) {
+            return NEEDS_FULL_FRAME;
+        }
+        float seconds = mTime.getSeconds();
+        computeHandBounds(seconds, mNextHandBounds);
+        mHandDirty.set(mHandBounds);
+        mHandDirty.union(mNextHandBounds);
+        //The canvas is clipped to the dirty region, which it may grow to what needs redrawing
+        Canvas canvas = holder.lockCanvas(mHandDirty);
+        if (canvas == null) {
+            return 0;
+        }
+        try {
+            canvas.drawBitmap(mLayerBitmap, mOffsetX - mMargin, mOffsetY - mMargin, null);
+            drawSecondHand(canvas, seconds);
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        long drawTime = System.nanoTime() - drawStart;
+        mMetrics.recordDraw(mSilentMode.isSilent()
+                ? FrameMetrics.MODE_SILENT : FrameMetrics.MODE_INTERACTIVE, drawTime);
+        return drawTime;
+    }
+
+    /**
+     * Draws the second hand and remembers where it went, so a sweep frame knows what to
+     * clear.
+     */
+    private void drawSecondHand(Canvas canvas, float seconds) {
+        /*
+         * These calculations reflect the rotation in degrees per unit of time, e.g.,
+         * 360 / 60 = 6 and 360 / 12 = 30.
+         */
+        final float secondsRotation = seconds * 6f;
+        Paint handPaint = ((int) seconds) % 15 == 0 ? mPaints.handHighlight : mPaints.hand;
+        canvas.save();
+        canvas.rotate(secondsRotation + 180, mCenterX, mCenterY);
+        float secondHandStart = mCenterY + (mHeight / 2f) - ((mHeight / 2f) * SECOND_HAND_LENGTH);
+        canvas.drawLine(mCenterX, secondHandStart, mCenterX, mCenterY + mHeight / 2f, handPaint);
+        canvas.restore();
+        computeHandBounds(seconds, mHandBounds);
+    }
+
+    /**
+     * Works out the screen area the second hand covers at the given time.
+     */
+    private void computeHandBounds(float seconds, Rect out) {
+        double angle = Math.toRadians(seconds * 6f + 180);
+        float sin = (float) Math.sin(angle);
+        float cos = (float) Math.cos(angle);
+        float outer = mHeight / 2f;
+        float inner = outer - outer * SECOND_HAND_LENGTH;
+        float innerX = mCenterX - inner * sin;
+        float innerY = mCenterY + inner * cos;
+        float outerX = mCenterX - outer * sin;
+        float outerY = mCenterY + outer * cos;
+        out.set((int) Math.floor(Math.min(innerX, outerX)) - HAND_BOUNDS_PADDING,
+                (int) Math.floor(Math.min(innerY, outerY)) - HAND_BOUNDS_PADDING,
+                (int) Math.ceil(Math.max(innerX, outerX)) + HAND_BOUNDS_PADDING,
+                (int) Math.ceil(Math.max(innerY, outerY)) + HAND_BOUNDS_PADDING);
+    }
+
+    private void recordStartupFrame() {
+        long elapsed = SystemClock.elapsedRealtime() - mCreateTime;
+        if (mTimeToFirstFrameMs < 0) {
+            mTimeToFirstFrameMs = elapsed;
+            mMetrics.recordFirstFrame(elapsed);
+            Tracer.trace(Tracer.FIRST_FRAME, elapsed);
+        }
+        if (mFontsLoaded) {
+            mTimeToStyledMs = elapsed;
+            mMetrics.recordStyled(elapsed);
+            Tracer.trace(Tracer.FULLY_STYLED, elapsed);
+        }
+    }
+
+    /**
+     * Returns whether anything shown in the cached layer has changed since it was last drawn.
+     */
+    private boolean isLayerStale(long minute) {
+        return mLayerMinute != minute
+                || mLayerCleanDate != mCleanDate
+                || mLayerBatteryLevel != mBatteryLevel
+                || mLayerPaints != mPaints;
+    }
+
+    /**
+     * Draws the background, time, date and battery level. This is everything on the face
+     * apart from the second hand.
+     */
+    private void drawLayer(Canvas canvas, float centerX, float centerY) {
+        FaceTheme.PaintSet paints = mPaints;
+        canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), paints.background);
+
+        //Measure the text and work out where it goes, the sizes are cached until it changes
+        TextBuffer time = mTime.getTimeText();
+        TextBuffer date = mTime.getDateText(mCleanDate);
+        TextBuffer battery = mBatteryText;
+        paints.time.measure(time);
+        paints.date.measure(date);
+        paints.battery.measure(battery);
+        mLayout.layout(centerX, centerY,
+                paints.time.getWidth(), paints.time.getHeight(),
+                paints.date.getWidth(), paints.date.getHeight(),
+                paints.battery.getWidth(), paints.battery.getHeight());
+        updateHitRegions();
+
+        canvas.drawText(time.chars(), 0, time.length(), mLayout.getTimeX(), mLayout.getTimeY(), paints.time.paint);
+        canvas.drawText(date.chars(), 0, date.length(), mLayout.getDateX(), mLayout.getDateY(), paints.date.paint);
+        canvas.drawText(battery.chars(), 0, battery.length(), mLayout.getBatteryX(), mLayout.getBatteryY(), paints.battery.paint);
+    }
+
+    private void updateHitRegions() {
+        synchronized (mHitRegions) {
+            mHitRegions.update(mLayout);
+        }
+    }
+
+    /**
+     * Returns which of the theme's modes the face should be drawn in.
+     */
+    private int themeMode() {
+        return FaceTheme.mode(mAmbient, mLowBitAmbient, mSilentMode.isSilent());
+    }
+
+    /**
+     * Forces the cached layer to be redrawn on the next frame.
+     */
+    private void invalidateLayer() {
+        mLayerMinute = Long.MIN_VALUE;
+    }
+}
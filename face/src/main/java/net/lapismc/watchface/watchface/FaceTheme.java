@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import net.lapismc.watchface.model.TextBuffer;
+
+/**
+ * The paints for every state the face can be drawn in, built once up front so that drawing only
+ * has to pick the right {@link PaintSet} rather than changing paints as it goes.
+ */
+final class FaceTheme {
+
+    static final int MODE_INTERACTIVE = 0;
+    static final int MODE_SILENT = 1;
+    static final int MODE_AMBIENT = 2;
+    static final int MODE_LOW_BIT_AMBIENT = 3;
+    static final int MODE_SILENT_AMBIENT = 4;
+    static final int MODE_SILENT_LOW_BIT_AMBIENT = 5;
+    private static final int MODE_COUNT = 6;
+
+    private static final float STROKE_WIDTH = 3f;
+    /* Low battery text is drawn this much bigger than the normal battery text. */
+    private static final float LOW_BATTERY_SCALE = 1.2f;
+
+    /**
+     * A paint along with the size of the last text it measured, so unchanged text isn't measured
+     * again.
+     */
+    static final class TextStyle {
+        final Paint paint;
+        private final TextBuffer mMeasured = new TextBuffer(32);
+        private final Rect mBounds = new Rect();
+        private boolean mValid;
+        private float mWidth;
+        private int mHeight;
+
+        TextStyle(Paint paint) {
+            this.paint = paint;
+        }
+
+        void measure(TextBuffer text) {
+            if (mValid && mMeasured.contentEquals(text)) {
+                return;
+            }
+            paint.getTextBounds(text.chars(), 0, text.length(), mBounds);
+            mWidth = paint.measureText(text.chars(), 0, text.length());
+            mHeight = mBounds.height();
+            mMeasured.set(text);
+            mValid = true;
+        }
+
+        /**
+         * Fills the cache with sizes measured earlier for the same paint, such as by a
+         * previous engine.
+         */
+        void seed(TextBuffer text, float width, int height) {
+            mMeasured.set(text);
+            mWidth = width;
+            mHeight = height;
+            mValid = true;
+        }
+
+        /**
+         * Returns the text the current sizes are for.
+         */
+        TextBuffer getText() {
+            return mMeasured;
+        }
+
+        float getWidth() {
+            return mWidth;
+        }
+
+        int getHeight() {
+            return mHeight;
+        }
+    }
+
+    /**
+     * Everything needed to draw the face in one state. Paint sets are never changed once built.
+     */
+    static final class PaintSet {
+        final int mode;
+        final boolean lowBattery;
+        final Paint background;
+        final TextStyle time;
+        final TextStyle date;
+        final TextStyle battery;
+        final Paint hand;
+        final Paint handHighlight;
+
+        PaintSet(int mode, boolean lowBattery, Paint background, TextStyle time, TextStyle date,
+                 TextStyle battery, Paint hand, Paint handHighlight) {
+            this.mode = mode;
+            this.lowBattery = lowBattery;
+            this.background = background;
+            this.time = time;
+            this.date = date;
+            this.battery = battery;
+            this.hand = hand;
+            this.handHighlight = handHighlight;
+        }
+    }
+
+    /* Indexed by mode * 2, plus one for low battery. */
+    private final PaintSet[] mSets = new PaintSet[MODE_COUNT * 2];
+
+    /**
+     * Builds the paint sets with text sizes multiplied by the scale, using the given fonts or the
+     * system font if they haven't loaded yet.
+     */
+    FaceTheme(float textScale, FontLoader.Fonts fonts) {
+        Typeface timeFont = fonts == null ? null : fonts.time;
+        Typeface dateFont = fonts == null ? null : fonts.date;
+        Typeface batteryFont = fonts == null ? null : fonts.battery;
+        Paint hand = createHandPaint(Color.WHITE);
+        Paint handHighlight = createHandPaint(Color.CYAN);
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            int colour = isSilent(mode) ? Color.GRAY : Color.WHITE;
+            //Low-bit ambient screens can only show fully on or off pixels
+            boolean lowBit = mode == MODE_LOW_BIT_AMBIENT || mode == MODE_SILENT_LOW_BIT_AMBIENT;
+            boolean antiAlias = !lowBit;
+            Paint background = new Paint();
+            background.setColor(backgroundColour(mode));
+            TextStyle time = new TextStyle(createTextPaint(timeFont, 100 * textScale, colour, antiAlias));
+            TextStyle date = new TextStyle(createTextPaint(dateFont, 20 * textScale, colour, antiAlias));
+            TextStyle battery = new TextStyle(createTextPaint(batteryFont, 45 * textScale, colour, antiAlias));
+            //Red on low battery, which low-bit screens can't show so it is only made bigger
+            TextStyle lowBattery = new TextStyle(createTextPaint(batteryFont,
+                    45 * textScale * LOW_BATTERY_SCALE,
+                    lowBit ? colour : Color.RED, antiAlias));
+            mSets[mode * 2] = new PaintSet(mode, false, background, time, date, battery, hand,
+                    handHighlight);
+            mSets[mode * 2 + 1] = new PaintSet(mode, true, background, time, date, lowBattery, hand,
+                    handHighlight);
+        }
+    }
+
+    PaintSet get(int mode, boolean lowBattery) {
+        return mSets[mode * 2 + (lowBattery ? 1 : 0)];
+    }
+
+    /**
+     * Returns the mode for the given screen state.
+     */
+    static int mode(boolean ambient, boolean lowBitAmbient, boolean silent) {
+        if (ambient) {
+            if (lowBitAmbient) {
+                return silent ? MODE_SILENT_LOW_BIT_AMBIENT : MODE_LOW_BIT_AMBIENT;
+            }
+            return silent ? MODE_SILENT_AMBIENT : MODE_AMBIENT;
+        }
+        return silent ? MODE_SILENT : MODE_INTERACTIVE;
+    }
+
+    private static boolean isSilent(int mode) {
+        return mode == MODE_SILENT || mode == MODE_SILENT_AMBIENT
+                || mode == MODE_SILENT_LOW_BIT_AMBIENT;
+    }
+
+    private static int backgroundColour(int mode) {
+        switch (mode) {
+            case MODE_INTERACTIVE:
+                return Color.BLUE;
+            case MODE_SILENT:
+                return Color.rgb(0, 0, 50);
+            default:
+                return Color.BLACK;
+        }
+    }
+
+    private static Paint createTextPaint(Typeface typeface, float size, int colour, boolean antiAlias) {
+        Paint paint = new Paint();
+        paint.setTypeface(typeface);
+        paint.setTextSize(size);
+        paint.setColor(colour);
+        paint.setAntiAlias(antiAlias);
+        return paint;
+    }
+
+    private static Paint createHandPaint(int colour) {
+        Paint paint = new Paint();
+        paint.setColor(colour);
+        paint.setStrokeWidth(STROKE_WIDTH);
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.STROKE);
+        return paint;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+
+import com.vstechlab.easyfonts.EasyFonts;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the watch face typefaces in parallel off the main thread, so the first frame can be drawn
+ * with the system font while they load.
+ */
+final class FontLoader {
+
+    /**
+     * The set of typefaces used by the face, handed over in one go once they have all loaded.
+     */
+    static final class Fonts {
+        final Typeface time;
+        final Typeface date;
+        final Typeface battery;
+
+        Fonts(Typeface time, Typeface date, Typeface battery) {
+            this.time = time;
+            this.date = date;
+            this.battery = battery;
+        }
+    }
+
+    interface Callback {
+        /**
+         * Called on the handler's thread once every typeface has loaded.
+         */
+        void onFontsLoaded(Fonts fonts);
+    }
+
+    private static final int TIME = 0;
+    private static final int DATE = 1;
+    private static final int BATTERY = 2;
+
+    private FontLoader() {
+    }
+
+    static void load(final Context context, Executor executor, final Handler handler,
+                     final Callback callback) {
+        final Typeface[] loaded = new Typeface[3];
+        final AtomicInteger remaining = new AtomicInteger(loaded.length);
+        for (int i = 0; i < loaded.length; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loaded[index] = loadTypeface(context, index);
+                    //Whichever load finishes last hands the complete set to the callback
+                    if (remaining.decrementAndGet() == 0) {
+                        final Fonts fonts = new Fonts(loaded[TIME], loaded[DATE], loaded[BATTERY]);
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onFontsLoaded(fonts);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+    }
+
+    private static Typeface loadTypeface(Context context, int index) {
+        switch (index) {
+            case TIME:
+                return EasyFonts.captureIt(context);
+            case DATE:
+                return EasyFonts.droidSerifRegular(context);
+            default:
+                return EasyFonts.robotoMedium(context);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size draw time histograms and counters for the watch face, printed by
+ * {@code adb shell dumpsys activity service MyWatchFaceService}.
+ * <p>
+ * Recording never allocates. Draw timings and frame counters are only written from the thread
+ * that draws, the main thread or the render thread, so a dump taken while drawing may be very
+ * slightly out of step.
+ */
+final class FrameMetrics {
+
+    static final int MODE_INTERACTIVE = 0;
+    static final int MODE_AMBIENT = 1;
+    static final int MODE_SILENT = 2;
+    private static final String[] MODE_NAMES = {"interactive", "ambient", "silent"};
+
+    /* Upper bound of each histogram bucket in microseconds, the last bucket catches the rest. */
+    private static final long[] BUCKET_BOUNDS_US =
+            {250, 500, 1000, 2000, 4000, 8000, 16000, 33000, 66000, Long.MAX_VALUE};
+
+    private final long[][] mHistograms = new long[MODE_NAMES.length][BUCKET_BOUNDS_US.length];
+    private final long[] mFrameCounts = new long[MODE_NAMES.length];
+    private final long[] mTotalNanos = new long[MODE_NAMES.length];
+    private final long[] mMaxNanos = new long[MODE_NAMES.length];
+
+    /* Time from a tap that changes the face to the end of the frame showing it. */
+    private final long[] mTapHistogram = new long[BUCKET_BOUNDS_US.length];
+    private long mTapCount;
+    private long mTapTotalNanos;
+    private long mTapMaxNanos;
+
+    /* Time from data being published to the first frame that shows it. */
+    private final long[] mPublishHistogram = new long[BUCKET_BOUNDS_US.length];
+    private long mPublishCount;
+    private long mPublishTotalNanos;
+    private long mPublishMaxNanos;
+    /* How long ago the data on each frame was published. */
+    private long mDataAgeFrames;
+    private long mDataAgeTotalMs;
+    private long mDataAgeMaxMs;
+
+    /* Commands waiting each time the render thread wakes, when it is used. */
+    private long mQueueDrains;
+    private long mQueueTotalDepth;
+    private int mQueueMaxDepth;
+    private final AtomicLong mQueueCoalesced = new AtomicLong();
+    /* Time from a frame being asked for to the render thread posting it. */
+    private final long[] mRenderHistogram = new long[BUCKET_BOUNDS_US.length];
+    private long mRenderCount;
+    private long mRenderTotalNanos;
+    private long mRenderMaxNanos;
+
+    private long mMissedTicks;
+    private long mMaxTickLatenessMs;
+    private long mLayerRebuilds;
+    /* How often the second hand is redrawn, 1 Hz unless the smooth sweep is on. */
+    private int mSecondHandHz = 1;
+    private long mSecondHandRateChanges;
+    private final AtomicLong mServiceCalls = new AtomicLong();
+
+    private long mTimeToFirstFrameMs = -1;
+    private long mTimeToStyledMs = -1;
+
+    void recordDraw(int mode, long durationNanos) {
+        addToHistogram(mHistograms[mode], durationNanos);
+        mFrameCounts[mode]++;
+        mTotalNanos[mode] += durationNanos;
+        if (durationNanos > mMaxNanos[mode]) {
+            mMaxNanos[mode] = durationNanos;
+        }
+    }
+
+    void recordTapToFrame(long latencyNanos) {
+        addToHistogram(mTapHistogram, latencyNanos);
+        mTapCount++;
+        mTapTotalNanos += latencyNanos;
+        if (latencyNanos > mTapMaxNanos) {
+            mTapMaxNanos = latencyNanos;
+        }
+    }
+
+    void recordPublishToDraw(long latencyNanos) {
+        addToHistogram(mPublishHistogram, latencyNanos);
+        mPublishCount++;
+        mPublishTotalNanos += latencyNanos;
+        if (latencyNanos > mPublishMaxNanos) {
+            mPublishMaxNanos = latencyNanos;
+        }
+    }
+
+    void recordDataAge(long ageNanos) {
+        long ageMs = ageNanos / 1000000;
+        mDataAgeFrames++;
+        mDataAgeTotalMs += ageMs;
+        if (ageMs > mDataAgeMaxMs) {
+            mDataAgeMaxMs = ageMs;
+        }
+    }
+
+    void recordRenderQueueDepth(int depth) {
+        mQueueDrains++;
+        mQueueTotalDepth += depth;
+        if (depth > mQueueMaxDepth) {
+            mQueueMaxDepth = depth;
+        }
+    }
+
+    /**
+     * Records a command coalesced with an earlier one because the render queue was full. Safe
+     * to call from any thread.
+     */
+    void recordRenderCommandCoalesced() {
+        mQueueCoalesced.incrementAndGet();
+    }
+
+    void recordRenderLatency(long latencyNanos) {
+        addToHistogram(mRenderHistogram, latencyNanos);
+        mRenderCount++;
+        mRenderTotalNanos += latencyNanos;
+        if (latencyNanos > mRenderMaxNanos) {
+            mRenderMaxNanos = latencyNanos;
+        }
+    }
+
+    /**
+     * Records how late an interactive tick was delivered, counting it as missed if the tick
+     * after it should already have happened.
+     */
+    void recordTick(long latenessMs, long periodMs) {
+        if (latenessMs >= periodMs) {
+            mMissedTicks++;
+        }
+        if (latenessMs > mMaxTickLatenessMs) {
+            mMaxTickLatenessMs = latenessMs;
+        }
+    }
+
+    void recordLayerRebuild() {
+        mLayerRebuilds++;
+    }
+
+    /**
+     * Records the rate the second hand is drawn at, returning whether it changed.
+     */
+    boolean recordSecondHandRate(int hz) {
+        if (hz == mSecondHandHz) {
+            return false;
+        }
+        mSecondHandHz = hz;
+        mSecondHandRateChanges++;
+        return true;
+    }
+
+    /**
+     * Records a call into a system service. Safe to call from any thread.
+     */
+    void recordServiceCall() {
+        mServiceCalls.incrementAndGet();
+    }
+
+    void recordFirstFrame(long elapsedMs) {
+        mTimeToFirstFrameMs = elapsedMs;
+    }
+
+    void recordStyled(long elapsedMs) {
+        mTimeToStyledMs = elapsedMs;
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("Startup:");
+        writer.println("  time to first frame: " + mTimeToFirstFrameMs + "ms");
+        writer.println("  time to fully styled: " + mTimeToStyledMs + "ms");
+        writer.println("Draw times:");
+        for (int mode = 0; mode < MODE_NAMES.length; mode++) {
+            dumpHistogram(writer, MODE_NAMES[mode], "frames", mHistograms[mode],
+                    mFrameCounts[mode], mTotalNanos[mode], mMaxNanos[mode]);
+        }
+        writer.println("Tap to frame:");
+        dumpHistogram(writer, "changes", "taps", mTapHistogram, mTapCount, mTapTotalNanos,
+                mTapMaxNanos);
+        writer.println("Data:");
+        dumpHistogram(writer, "publish to draw", "snapshots", mPublishHistogram, mPublishCount,
+                mPublishTotalNanos, mPublishMaxNanos);
+        if (mDataAgeFrames > 0) {
+            writer.println("  age when drawn: mean " + (mDataAgeTotalMs / mDataAgeFrames)
+                    + "ms, max " + mDataAgeMaxMs + "ms");
+        }
+        if (mQueueDrains > 0) {
+            writer.println("Render thread:");
+            writer.println("  queue depth: mean " + (mQueueTotalDepth / mQueueDrains) + ", max "
+                    + mQueueMaxDepth + ", " + mQueueCoalesced.get() + " commands coalesced");
+            dumpHistogram(writer, "request to frame", "frames", mRenderHistogram, mRenderCount,
+                    mRenderTotalNanos, mRenderMaxNanos);
+        }
+        writer.println("Ticks:");
+        writer.println("  missed deadlines: " + mMissedTicks);
+        writer.println("  max lateness: " + mMaxTickLatenessMs + "ms");
+        writer.println("Layer rebuilds: " + mLayerRebuilds);
+        writer.println("Second hand: " + mSecondHandHz + "Hz, " + mSecondHandRateChanges
+                + " rate changes");
+        writer.println("System service calls: " + mServiceCalls.get());
+    }
+
+    private static void addToHistogram(long[] histogram, long durationNanos) {
+        long micros = durationNanos / 1000;
+        for (int i = 0; i < BUCKET_BOUNDS_US.length; i++) {
+            if (micros <= BUCKET_BOUNDS_US[i]) {
+                histogram[i]++;
+                break;
+            }
+        }
+    }
+
+    private static void dumpHistogram(PrintWriter writer, String name, String unit,
+                                      long[] histogram, long count, long totalNanos,
+                                      long maxNanos) {
+        writer.print("  " + name + ": " + count + " " + unit);
+        if (count > 0) {
+            writer.print(", mean " + (totalNanos / count / 1000) + "us"
+                    + ", p50 <=" + formatBound(percentile(histogram, count, 0.5)) + "us"
+                    + ", p90 <=" + formatBound(percentile(histogram, count, 0.9)) + "us"
+                    + ", p99 <=" + formatBound(percentile(histogram, count, 0.99)) + "us"
+                    + ", max " + (maxNanos / 1000) + "us");
+        }
+        writer.println();
+        if (count > 0) {
+            writer.print("    histogram:");
+            for (int i = 0; i < histogram.length; i++) {
+                writer.print(" <=" + formatBound(BUCKET_BOUNDS_US[i]) + ":" + histogram[i]);
+            }
+            writer.println();
+        }
+    }
+
+    /**
+     * Returns the upper bound of the bucket that the given fraction of samples fall within.
+     */
+    private static long percentile(long[] histogram, long count, double fraction) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target) {
+                return BUCKET_BOUNDS_US[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static String formatBound(long boundUs) {
+        return boundUs == Long.MAX_VALUE ? "inf" : String.valueOf(boundUs);
+    }
+}
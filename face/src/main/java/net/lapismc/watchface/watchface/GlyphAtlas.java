@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import net.lapismc.watchface.model.TextBuffer;
+
+/**
+ * A set of glyphs rasterized once into an 8-bit alpha bitmap, so text can be drawn by copying
+ * glyphs out of it instead of going through the font renderer. The glyphs take their colour
+ * from the paint they are drawn with.
+ * <p>
+ * Only ASCII glyphs are supported, any other character or one not in the atlas is skipped.
+ */
+final class GlyphAtlas {
+
+    private static final int CHAR_LIMIT = 128;
+
+    private final Bitmap mBitmap;
+    /* Where the baseline sits in the atlas. Every glyph cell spans the full atlas height. */
+    private final int mBaseline;
+    private final boolean[] mPresent = new boolean[CHAR_LIMIT];
+    private final float[] mAdvance = new float[CHAR_LIMIT];
+    private final int[] mCellX = new int[CHAR_LIMIT];
+    private final int[] mCellWidth = new int[CHAR_LIMIT];
+    /* Offset from the pen position to the left of the cell. */
+    private final int[] mCellOffset = new int[CHAR_LIMIT];
+    /* Ink bounds relative to the baseline, equal when the glyph has no ink. */
+    private final int[] mInkTop = new int[CHAR_LIMIT];
+    private final int[] mInkBottom = new int[CHAR_LIMIT];
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    /**
+     * Rasterizes the glyphs with the paint. The paint's colour is ignored, only its coverage is
+     * kept, so a paint without anti-aliasing gives a 1-bit atlas.
+     */
+    GlyphAtlas(Paint paint, String glyphs) {
+        Paint raster = new Paint(paint);
+        raster.setColor(0xFFFFFFFF);
+        int padding = (int) Math.ceil(raster.getStrokeWidth()) + 1;
+        Rect bounds = new Rect();
+        int width = 0;
+        int top = 0;
+        int bottom = 0;
+        for (int i = 0; i < glyphs.length(); i++) {
+            char c = glyphs.charAt(i);
+            raster.getTextBounds(glyphs, i, i + 1, bounds);
+            mPresent[c] = true;
+            mAdvance[c] = raster.measureText(glyphs, i, i + 1);
+            mInkTop[c] = bounds.top;
+            mInkBottom[c] = bounds.bottom;
+            mCellOffset[c] = bounds.left - padding;
+            mCellX[c] = width;
+            mCellWidth[c] = bounds.width() + padding * 2;
+            width += mCellWidth[c];
+            top = Math.min(top, bounds.top - padding);
+            bottom = Math.max(bottom, bounds.bottom + padding);
+        }
+        mBaseline = -top;
+        mBitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, bottom - top),
+                Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mBitmap);
+        char[] chars = glyphs.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            canvas.drawText(chars, i, 1, mCellX[c] - mCellOffset[c], mBaseline, raster);
+        }
+    }
+
+    /**
+     * Returns how far the pen moves when drawing the text, like {@link Paint#measureText}.
+     */
+    float measure(TextBuffer text) {
+        char[] chars = text.chars();
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = chars[i];
+            if (c < CHAR_LIMIT && mPresent[c]) {
+                width += mAdvance[c];
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Returns the height of the inked part of the text, like the bounds from
+     * {@link Paint#getTextBounds}.
+     */
+    int getHeight(TextBuffer text) {
+        char[] chars = text.chars();
+        int top = Integer.MAX_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < text.length(); i++) {
+            char c = chars[i];
+            if (c < CHAR_LIMIT && mPresent[c] && mInkTop[c] != mInkBottom[c]) {
+                top = Math.min(top, mInkTop[c]);
+                bottom = Math.max(bottom, mInkBottom[c]);
+            }
+        }
+        return top > bottom ? 0 : bottom - top;
+    }
+
+    /**
+     * Draws the text with its left end at x, using the paint's colour.
+     */
+    void draw(Canvas canvas, TextBuffer text, float x, float baseline, Paint paint) {
+        char[] chars = text.chars();
+        float pen = x;
+        int top = Math.round(baseline) - mBaseline;
+        int bottom = top + mBitmap.getHeight();
+        for (int i = 0; i < text.length(); i++) {
+            char c = chars[i];
+            if (c >= CHAR_LIMIT || !mPresent[c]) {
+                continue;
+            }
+            if (mInkTop[c] != mInkBottom[c]) {
+                int left = Math.round(pen) + mCellOffset[c];
+                mSrc.set(mCellX[c], 0, mCellX[c] + mCellWidth[c], mBitmap.getHeight());
+                mDst.set(left, top, left + mCellWidth[c], bottom);
+                canvas.drawBitmap(mBitmap, mSrc, mDst, paint);
+            }
+            pen += mAdvance[c];
+        }
+    }
+
+    void recycle() {
+        mBitmap.recycle();
+    }
+}
@@ -17,43 +17,38 @@
 package net.lapismc.watchface.watchface;
 
 import android.annotation.SuppressLint;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.icu.text.SimpleDateFormat;
-import android.media.AudioAttributes;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.os.BatteryManager;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.DisplayMetrics;
+import android.view.Choreographer;
 import android.view.SurfaceHolder;
-import android.view.WindowManager;
 
 import androidx.annotation.RequiresApi;
 
-import com.vstechlab.easyfonts.EasyFonts;
-
+import net.lapismc.watchface.BuildConfig;
 import net.lapismc.watchface.R;
-
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Locale;
-import java.util.Random;
+import net.lapismc.watchface.model.BurnInOffsets;
+import net.lapismc.watchface.model.ChimePlayer;
+import net.lapismc.watchface.model.Clock;
+import net.lapismc.watchface.model.FaceData;
+import net.lapismc.watchface.model.FaceSchedule;
+import net.lapismc.watchface.model.HitRegions;
+import net.lapismc.watchface.model.SystemServices;
+import net.lapismc.watchface.model.WarmStartStore;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Analog watch face with a ticking second hand. In ambient mode, the second hand isn't shown. On
@@ -62,162 +57,272 @@ import java.util.concurrent.TimeUnit;
 public class MyWatchFaceService extends CanvasWatchFaceService {
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
+     * The content is moved by less than this many pixels in each direction to prevent burn in.
+     */
+    private static final int BURN_IN_VARIANCE = 30;
+
+    private final FrameMetrics mMetrics = new FrameMetrics();
+    /* Shared by the engines, as an old one can outlive the creation of its replacement. */
+    private final ChimeAlarm mChimeAlarm = new ChimeAlarm(this, mMetrics);
+    private final DeviceServices mDeviceServices = new DeviceServices(this, mChimeAlarm, mMetrics);
+    /*
+     * Whether engines draw on a RenderThread of their own rather than having the framework draw
+     * on the main thread, set by the build.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private final boolean mRenderThreadEnabled = BuildConfig.RENDER_THREAD;
 
     @Override
     public Engine onCreateEngine() {
-        return new Engine();
+        return new Engine(Clock.SYSTEM, mDeviceServices);
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length == 2 && "trace".equals(args[0])) {
+            if (!Tracer.setLevel(args[1])) {
+                writer.println("Unknown trace level " + args[1]);
+            }
+        }
+        mMetrics.dump(writer);
+        Tracer.dump(writer);
+    }
 
-        private static final float STROKE_WIDTH = 3f;
-        /* Handler to update the time once a second in interactive mode. */
+    /**
+     * One instance of the face. The clock and system services are passed in so the engine can be
+     * driven by a harness on simulated time.
+     */
+    class Engine extends CanvasWatchFaceService.Engine implements DataPipeline.Listener,
+            FontLoader.Callback, SweepPacer.Listener, RenderThread.Listener, FaceSchedule.Host,
+            ChimeAlarm.Listener {
+
+        //Where the engine and the parts it creates get the time from
+        private final Clock mClock;
+        private final SystemServices mServices;
+        private FaceSchedule mSchedule;
+        /*
+         * Handler that wakes up for mSchedule while in interactive mode, and takes second hand
+         * frame times back from the render thread.
+         */
         @SuppressLint("HandlerLeak")
         private final Handler mUpdateTimeHandler = new Handler(Looper.myLooper()) {
             @Override
             public void handleMessage(Message message) {
                 if (R.id.message_update == message.what) {
-                    invalidate();
-                    if (shouldTimerBeRunning()) {
-                        long timeMs = System.currentTimeMillis();
-                        long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                                - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                        mUpdateTimeHandler.sendEmptyMessageDelayed(R.id.message_update, delayMs);
+                    long lateness = mSchedule.onWakeup();
+                    if (lateness >= 0) {
+                        mMetrics.recordTick(lateness, FaceSchedule.TICK_MS);
                     }
+                } else if (R.id.message_hand_frame == message.what) {
+                    mSweepPacer.recordFrame(message.arg1 * 1000L);
                 }
             }
         };
-        private boolean mRegisteredTimeZoneReceiver = false;
-        private Calendar mCalendar;
-        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
-            }
-        };
+        private boolean mRegisteredReceivers = false;
         private boolean mIsCleanDateFormat;
 
-        private boolean mIsSilentMode = false;
+        private SilentModeController mSilentMode;
 
         private long mLastTapTime = 0L;
-        private Paint mBackgroundPaint;
-        private Paint mAmbientPaint;
-        private Paint mSilentModePaint;
-        private Paint mHandPaint;
-        private Paint mTimePaint;
-        private Paint mDatePaint;
-        private Paint mBatteryPaint;
-
-        private SimpleDateFormat mAllInfoTimeFormat;
-        private SimpleDateFormat mTimeFormat;
-        private SimpleDateFormat mCleanDateFormat;
-        private SimpleDateFormat mStandardDateFormat;
+        private float mTextScale;
 
         private boolean mAmbient;
+        /*
+         * The smooth sweep second hand, set by the build. When on the hand is redrawn on its own
+         * between ticks, covering only where it was and will be.
+         */
+        private final boolean mSweepEnabled = BuildConfig.SMOOTH_SWEEP;
+        private SweepPacer mSweepPacer;
 
-        private int mHeight;
-        private float mCenterX;
-        private float mCenterY;
-
-        private String mBatteryText;
-        private int mBatteryCounter;
-        private boolean mLowBattery;
-        private int mCurrentHour;
-        private Long mDateFormatTime;
+        /* Data from the providers, and what the main thread has last done with it. */
+        private DataPipeline mDataPipeline;
+        private TimeZone mNotifiedTimeZone;
 
+        private BurnInOffsets mOffsets;
         private int mOffsetY, mOffsetX;
-        private int mOffsetCounter;
 
-        private float mTimeX, mTimeY, mTimeLength, mTimeHeight;
+        /*
+         * Draws the face. Changes are handed to it with render(), which queues them for the
+         * render thread if there is one, and otherwise applies them straight away.
+         */
+        private FaceRenderer mRenderer;
+        private RenderThread mRenderThread;
+
+        private ChimeAudio mChimeAudio;
 
-        private MediaPlayer mMediaPlayer;
+        /* Heavy resources are loaded on this while the first frame is drawn with fallbacks. */
+        private ExecutorService mBackgroundExecutor;
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+        /*
+         * Set once the engine is destroyed. Background work that was already running can still
+         * post results afterwards, and they must not reach the released parts.
+         */
+        private boolean mDestroyed;
+
+        Engine(Clock clock, SystemServices services) {
+            mClock = clock;
+            mServices = services;
+        }
 
         @RequiresApi(api = Build.VERSION_CODES.Q)
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            long createTime = SystemClock.elapsedRealtime();
+            mBackgroundExecutor = Executors.newCachedThreadPool();
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(MyWatchFaceService.this)
                     .setAcceptsTapEvents(true).build());
 
-            mHandPaint = new Paint();
-            mHandPaint.setColor(Color.WHITE);
-            mHandPaint.setStrokeWidth(STROKE_WIDTH);
-            mHandPaint.setAntiAlias(true);
-            mHandPaint.setStyle(Paint.Style.STROKE);
-
-            int mInteractiveColor = Color.BLUE;
-            int mSilentModeColor = Color.rgb(0, 0, 50);
-            int mAmbientColor = Color.BLACK;
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(mInteractiveColor);
-
-            mAmbientPaint = new Paint();
-            mAmbientPaint.setColor(mAmbientColor);
-
-            mSilentModePaint = new Paint();
-            mSilentModePaint.setColor(mSilentModeColor);
-
-            DisplayMetrics displayMetrics = new DisplayMetrics();
-            ((WindowManager) getSystemService(WINDOW_SERVICE)).getDefaultDisplay()
-                    .getMetrics(displayMetrics);
-            float textScale = (float) (displayMetrics.scaledDensity * 0.7);
-            System.out.println("TextScale: " + textScale);
-
-            mTimePaint = new Paint();
-            mTimePaint.setTextSize(100 * textScale);
-            mTimePaint.setColor(Color.WHITE);
-            mTimePaint.setAntiAlias(true);
-            mTimePaint.setTypeface(EasyFonts.captureIt(getBaseContext()));
-
-            mDatePaint = new Paint();
-            mDatePaint.setTextSize(20 * textScale);
-            mDatePaint.setColor(Color.WHITE);
-            mDatePaint.setAntiAlias(true);
-            mDatePaint.setTypeface(EasyFonts.droidSerifRegular(getBaseContext()));
-
-            mBatteryPaint = new Paint();
-            mBatteryPaint.setTextSize(45 * textScale);
-            mBatteryPaint.setColor(Color.WHITE);
-            mBatteryPaint.setAntiAlias(true);
-            mBatteryPaint.setTypeface(EasyFonts.robotoMedium(getBaseContext()));
-            mBatteryCounter = 3;
-
-            mAllInfoTimeFormat = new SimpleDateFormat("hh:mm:ss dd/MM/yyyy", Locale.ENGLISH);
-            mTimeFormat = new SimpleDateFormat("hh:mm", Locale.ENGLISH);
-            mCleanDateFormat = new SimpleDateFormat("EE dd MMM", Locale.ENGLISH);
-            mStandardDateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.ENGLISH);
-
-            mCalendar = Calendar.getInstance();
+            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+            mTextScale = (float) (displayMetrics.scaledDensity * 0.7);
+            //Pick up where the last engine left off, unless the text scale has changed
+            WarmStartStore warmStartStore = new WarmStartStore(getFilesDir());
+            WarmStartStore.State saved = warmStartStore.load();
+            if (saved != null && saved.textScale != mTextScale) {
+                saved = null;
+            }
+            mSweepPacer = new SweepPacer(Choreographer.getInstance(), this);
+            if (mSweepEnabled) {
+                mMetrics.recordSecondHandRate(mSweepPacer.currentHz());
+            }
+            DataProvider[] providers = {
+                    new BatteryProvider(MyWatchFaceService.this, mMetrics),
+                    new TimeZoneProvider(MyWatchFaceService.this, mMetrics)};
+            mDataPipeline = new DataPipeline(providers,
+                    saved == null ? FaceData.EMPTY : new FaceData(saved.batteryLevel, null, 0, 0), this);
+            mSilentMode = new SilentModeController(MyWatchFaceService.this, mMetrics);
+
+            //The paints use the system typeface until our own fonts have loaded
+            mRenderer = new FaceRenderer(mMetrics, mClock, mDataPipeline, mSilentMode,
+                    warmStartStore, mBackgroundExecutor, new FaceTheme(mTextScale, null),
+                    BURN_IN_VARIANCE, createTime);
+            mOffsets = new BurnInOffsets(BURN_IN_VARIANCE);
+            mSchedule = new FaceSchedule(mClock, mServices, this);
             mIsCleanDateFormat = true;
+            if (saved != null) {
+                mOffsets.setStep(saved.offsetStep);
+                mOffsetX = mOffsets.getX();
+                mOffsetY = mOffsets.getY();
+                mRenderer.restore(saved);
+                mRenderer.apply(FaceRenderer.CMD_OFFSET, FaceRenderer.pack(mOffsetX, mOffsetY), null);
+            }
+            //The renderer is set up before the thread starts, from here on it only takes commands
+            if (mRenderThreadEnabled) {
+                mRenderThread = new RenderThread(holder, mRenderer, mMetrics, this);
+                mRenderThread.start();
+            }
+            FontLoader.load(getBaseContext(), mBackgroundExecutor, mMainHandler, this);
 
-            mMediaPlayer = MediaPlayer.create(getApplicationContext(), R.raw.beep);
+            ChimePlayer chimePlayer = new ChimePlayer(
+                    new ChimeDecoder(getApplicationContext(), R.raw.beep), new AudioTrackSink());
+            mChimeAudio = new ChimeAudio(chimePlayer);
+            mChimeAlarm.acquire(this);
 
+            if (saved != null) {
+                mSilentMode.restore(saved.silent);
+                return;
+            }
+            //Set silent mode if it was active before reboot, this talks to the audio service so
+            //it is done in the background and the face redrawn once it is known
+            mBackgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mSilentMode.restore();
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!mDestroyed) {
+                                invalidate();
+                            }
+                        }
+                    });
+                }
+            });
+        }
 
-            //Set silent mode if it was active before reboot
-            AudioManager man = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-            int currentVolume = man.getStreamVolume(AudioManager.STREAM_NOTIFICATION);
-            int maxVolume = man.getStreamMaxVolume(AudioManager.STREAM_NOTIFICATION);
-            if (maxVolume != currentVolume && !mIsSilentMode) {
-                toggleSilentMode();
+        /**
+         * Hands a change to the renderer on whichever thread draws.
+         */
+        private void render(int command, long value, Object object) {
+            if (mRenderThread != null) {
+                mRenderThread.post(command, value, object);
+            } else {
+                mRenderer.apply(command, value, object);
             }
         }
 
+        private void render(int command, boolean value) {
+            render(command, value ? 1 : 0, null);
+        }
+
+        @Override
+        public void invalidate() {
+            //With a render thread of our own the framework never draws, the thread does
+            if (mRenderThread != null) {
+                mRenderThread.requestFrame();
+            } else {
+                super.invalidate();
+            }
+        }
+
+        @Override
+        public void onFontsLoaded(FontLoader.Fonts fonts) {
+            if (mDestroyed) {
+                return;
+            }
+            render(FaceRenderer.CMD_THEME, 0, new FaceTheme(mTextScale, fonts));
+            invalidate();
+            //The rest of startup can wait until the face is fully styled
+            mSchedule.scheduleChime(TimeZone.getDefault());
+        }
+
         @Override
         public void onDestroy() {
+            mDestroyed = true;
             mUpdateTimeHandler.removeMessages(R.id.message_update);
+            mUpdateTimeHandler.removeMessages(R.id.message_hand_frame);
+            mSweepPacer.stop();
+            mDataPipeline.release();
+            //The alarm itself carries on for any other engine
+            mChimeAlarm.release(this);
+            mChimeAudio.release();
+            if (isVisible()) {
+                saveWarmStart();
+            }
+            if (mRenderThread != null) {
+                //The thread releases the renderer once it has finished the save
+                mRenderThread.quit();
+                mRenderThread = null;
+            } else {
+                mRenderer.release();
+            }
+            //Let a warm start save that is still waiting finish
+            mBackgroundExecutor.shutdown();
+            mMainHandler.removeCallbacksAndMessages(null);
             super.onDestroy();
         }
 
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+            int screen = 0;
+            if (properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false)) {
+                screen |= FaceRenderer.SCREEN_LOW_BIT;
+            }
+            if (properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false)) {
+                screen |= FaceRenderer.SCREEN_BURN_IN_PROTECTION;
+            }
+            render(FaceRenderer.CMD_SCREEN, screen, null);
+            invalidate();
+        }
+
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            //In ambient mode this is the only wakeup, so any task that has come due runs now
+            if (mAmbient) {
+                mSchedule.onAmbientTick();
+            }
             invalidate();
         }
 
@@ -226,19 +331,11 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
+                Tracer.trace(Tracer.AMBIENT_CHANGED, inAmbientMode);
+                render(FaceRenderer.CMD_AMBIENT, inAmbientMode);
                 invalidate();
             }
 
-            if (mAmbient) {
-                mTimePaint.setAntiAlias(false);
-                mDatePaint.setAntiAlias(false);
-            } else {
-                //make battery % update when screen wakes
-                mBatteryCounter = 3;
-                mTimePaint.setAntiAlias(true);
-                mDatePaint.setAntiAlias(true);
-            }
-
             /*
              * Whether the timer should be running depends on whether we're visible (as well as
              * whether we're in ambient mode), so we may need to start or stop the timer.
@@ -252,237 +349,160 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             if (tapType != TAP_TYPE_TAP) {
                 return;
             }
-            int x0, y0, x1, y1;
-            x0 = (int) (mTimeX);
-            y0 = (int) (mTimeY);
-            x1 = (int) (mTimeX + mTimeLength);
-            y1 = (int) (mTimeY - mTimeHeight);
-            boolean isHit = false;
-            if (x > x0 && x < x1) {
-                if (y < y0 && y > y1) {
-                    isHit = true;
-                }
+            long tapNanos = System.nanoTime();
+            Tracer.trace(Tracer.TAP, (x << 16) | (y & 0xFFFF));
+            long now = mClock.currentTimeMillis();
+            boolean changed;
+            //The regions are in layer coordinates, which are shifted by the burn in offset
+            int layerX = x - mOffsetX + BURN_IN_VARIANCE;
+            int layerY = y - mOffsetY + BURN_IN_VARIANCE;
+            switch (mRenderer.findRegion(layerX, layerY)) {
+                case HitRegions.TIME:
+                    changed = onTimeTapped();
+                    break;
+                default:
+                    changed = onBackgroundTapped(now);
+                    break;
             }
-            if (isHit) {
-                mIsCleanDateFormat = !mIsCleanDateFormat;
-                if (!mIsCleanDateFormat) {
-                    mDateFormatTime = System.currentTimeMillis();
-                }
-            } else {
-                if (mLastTapTime != 0 && System.currentTimeMillis() - mLastTapTime < 1000) {
-                    toggleSilentMode();
-                }
-                mLastTapTime = System.currentTimeMillis();
+            if (changed) {
+                //Redraw straight away rather than waiting for the next tick to show the change
+                render(FaceRenderer.CMD_TAP, tapNanos, null);
+                invalidate();
             }
         }
 
-        private void toggleSilentMode() {
-            mIsSilentMode = !mIsSilentMode;
-            //Process ring volume change for silent mode
-            AudioManager man = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-            if (mIsSilentMode) {
-                man.setStreamVolume(AudioManager.STREAM_NOTIFICATION, 0, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
-            } else {
-                int maxVolume = man.getStreamMaxVolume(AudioManager.STREAM_NOTIFICATION);
-                man.setStreamVolume(AudioManager.STREAM_NOTIFICATION, maxVolume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+        /**
+         * Switches the date format, going back to the clean format after a while.
+         */
+        private boolean onTimeTapped() {
+            mIsCleanDateFormat = !mIsCleanDateFormat;
+            Tracer.trace(Tracer.DATE_FORMAT_CHANGED, mIsCleanDateFormat);
+            render(FaceRenderer.CMD_CLEAN_DATE, mIsCleanDateFormat);
+            mSchedule.setCleanDateFormat(mIsCleanDateFormat);
+            return true;
+        }
+
+        /**
+         * Toggles silent mode on a double tap anywhere that doesn't have its own action.
+         */
+        private boolean onBackgroundTapped(long now) {
+            boolean doubleTap = mLastTapTime != 0 && now - mLastTapTime < 1000;
+            mLastTapTime = now;
+            if (!doubleTap) {
+                return false;
             }
+            mSilentMode.toggle();
+            Tracer.trace(Tracer.SILENT_MODE_CHANGED, mSilentMode.isSilent());
+            return true;
+        }
+
+        @Override
+        public void onDataChanged(FaceData data) {
+            if (mDestroyed) {
+                return;
+            }
+            //Drawing picks the data up itself, this only deals with what isn't drawn
+            if (data.timeZone != null && !data.timeZone.equals(mNotifiedTimeZone)) {
+                mNotifiedTimeZone = data.timeZone;
+                mSchedule.scheduleChime(data.timeZone);
+            }
+            mSweepPacer.setLowBattery(data.batteryLow);
+            invalidate();
+        }
+
+        @Override
+        public void onSweepRateChanged(int hz) {
+            //Without the sweep the hand only moves on the tick
+            int rate = mSweepEnabled ? hz : 1;
+            if (mMetrics.recordSecondHandRate(rate)) {
+                Tracer.trace(Tracer.SECOND_HAND_RATE, rate);
+            }
+            updateTimer();
+        }
+
+        @Override
+        public void onSweepFrame(long frameTimeNanos) {
+            if (mRenderThread != null) {
+                mRenderThread.requestHandFrame();
+                return;
+            }
+            long drawTime = mRenderer.drawHandFrame(getSurfaceHolder());
+            if (drawTime == FaceRenderer.NEEDS_FULL_FRAME) {
+                invalidate();
+            } else if (drawTime > 0) {
+                mSweepPacer.recordFrame(drawTime);
+            }
+        }
+
+        @Override
+        public void onHandFrameDrawn(long drawNanos) {
+            //The pacer belongs to the main thread, a pooled message takes the time back to it
+            mUpdateTimeHandler.obtainMessage(R.id.message_hand_frame,
+                    (int) (drawNanos / 1000), 0).sendToTarget();
         }
 
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            render(FaceRenderer.CMD_SURFACE_SIZE, FaceRenderer.pack(width, height), null);
+            if (mRenderThread != null) {
+                mRenderThread.setSurfaceValid(true);
+            }
             super.onSurfaceChanged(holder, format, width, height);
-            mHeight = height;
-            /*
-             * Find the coordinates of the center point on the screen.
-             * Ignore the window insets so that, on round watches
-             * with a "chin", the watch face is centered on the entire screen,
-             * not just the usable portion.
-             */
-            mCenterX = width / 2f;
-            mCenterY = mHeight / 2f;
         }
 
         @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            System.out.println(mAllInfoTimeFormat.format(mCalendar.getTime().getTime()));
-
-            //Get battery percentage and check if it is below 25%
-            if (mBatteryCounter >= 3 || mAmbient) {
-                IntentFilter iFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-                Intent batteryStatus = MyWatchFaceService.this.registerReceiver(null, iFilter);
-                int watchBattery = batteryStatus != null ? batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1) : 0;
-                mBatteryText = watchBattery + "%";
-                //50 normal , 60 low battery
-                //White normal but red on low battery
-                mLowBattery = watchBattery < 31;
-                if (watchBattery > 30) {
-                    mBatteryPaint.setTextSize(50);
-                } else {
-                    mBatteryPaint.setTextSize(60);
-                }
-                mBatteryCounter = 0;
-            }
-            mBatteryCounter++;
-
-            if (mIsSilentMode) {
-                //175
-                int alpha = 255;
-                int colour = Color.GRAY;
-                mTimePaint.setAlpha(alpha);
-                mTimePaint.setColor(colour);
-                mDatePaint.setAlpha(alpha);
-                mDatePaint.setColor(colour);
-                mBatteryPaint.setAlpha(alpha);
-                if (mLowBattery)
-                    mBatteryPaint.setColor(Color.RED);
-                else
-                    mBatteryPaint.setColor(colour);
-
-                //Process ring volume change for silent mode
-                //This is here to enforce the mute of sound
-                AudioManager man = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-                if (mIsSilentMode) {
-                    man.setStreamVolume(AudioManager.STREAM_NOTIFICATION, 0, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
-                } else {
-                    int maxVolume = man.getStreamMaxVolume(AudioManager.STREAM_NOTIFICATION);
-                    man.setStreamVolume(AudioManager.STREAM_NOTIFICATION, maxVolume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
-                }
-            } else {
-                int alpha = 255;
-                int colour = Color.WHITE;
-                mTimePaint.setAlpha(alpha);
-                mTimePaint.setColor(colour);
-                mDatePaint.setAlpha(alpha);
-                mDatePaint.setColor(colour);
-                mBatteryPaint.setAlpha(alpha);
-                if (mLowBattery)
-                    mBatteryPaint.setColor(Color.RED);
-                else
-                    mBatteryPaint.setColor(colour);
-            }
-
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            //Deal with offset for burn in prevention
-            mOffsetCounter++;
-            if (mOffsetCounter >= 30 || mAmbient) {
-                Random r = new Random();
-                int variance = 30;
-                mOffsetCounter = 0;
-                mOffsetX = r.nextBoolean() ? -r.nextInt(variance) : r.nextInt(variance);
-                mOffsetY = r.nextBoolean() ? -r.nextInt(variance) : r.nextInt(variance);
-            }
-
-            // Draw the background.
-            if (mAmbient) {
-                canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mAmbientPaint);
+        public void onSurfaceRedrawNeeded(SurfaceHolder holder) {
+            if (mRenderThread != null) {
+                invalidate();
             } else {
-                if (mIsSilentMode) {
-                    canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mSilentModePaint);
-                } else {
-                    canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mBackgroundPaint);
-                }
+                super.onSurfaceRedrawNeeded(holder);
             }
+        }
 
-            //Vibrate if on the hour
-            if (mCurrentHour != mCalendar.get(Calendar.HOUR_OF_DAY)) {
-                mCurrentHour = mCalendar.get(Calendar.HOUR_OF_DAY);
-                //Check if the minutes is 00
-                //This stops it going off when the watch is woken up or the app installed
-                if (mCalendar.get(Calendar.MINUTE) == 0) {
-                    Vibrator vibrator = (Vibrator) getSystemService(VIBRATOR_SERVICE);
-                    // 2 alert vibes + 1 break 12 hours * 2
-                    long[] timings = new long[27];
-                    int[] amplitudes = new int[27];
-                    timings[0] = 750;
-                    timings[1] = 500;
-                    timings[2] = 1000;
-                    amplitudes[0] = 100;
-                    amplitudes[1] = 255;
-                    amplitudes[2] = 0;
-                    int hour = mCalendar.get(Calendar.HOUR);
-                    if (hour == 0) hour = 12;
-                    for (int i = 3; i < timings.length; i++) {
-                        //(i % 2 == 0) = off time
-                        // 100 off, 250 on
-                        timings[i] = i % 2 == 0 ? 200 : 250;
-                        // 0 off, 255 on
-                        amplitudes[i] = i % 2 == 0 || (i / 2) > hour ? 0 : 255;
-                    }
-                    System.out.println(Arrays.toString(timings) + " : " + Arrays.toString(amplitudes));
-                    vibrator.vibrate(VibrationEffect.createWaveform(timings, amplitudes, -1), new AudioAttributes.Builder().setUsage(AudioAttributes.USAGE_ALARM).build());
-                    //If the time is between 6am and 11pm(23 hours) exclusive
-                    if (!mIsSilentMode) {
-                        mMediaPlayer.setVolume(0.1f, 0.1f);
-                        mMediaPlayer.start();
-                    }
-                }
+        @Override
+        public void onSurfaceDestroyed(SurfaceHolder holder) {
+            if (mRenderThread != null) {
+                mRenderThread.setSurfaceValid(false);
             }
+            super.onSurfaceDestroyed(holder);
+        }
 
-            //Get and draw the time
-            String time = mTimeFormat.format(mCalendar.getTime());
-            Rect timeBounds = new Rect();
-            mTimePaint.getTextBounds(time, 0, time.length(), timeBounds);
-            int timeOffset = timeBounds.height() / 2;
-            mTimeX = mCenterX - (mTimePaint.measureText(time) / 2) + mOffsetX;
-            mTimeY = mCenterY + timeOffset + mOffsetY;
-            mTimeLength = mTimePaint.measureText(time);
-            mTimeHeight = timeBounds.height();
-            canvas.drawText(time, mTimeX, mTimeY, mTimePaint);
-
-            String date;
-            if (!mIsCleanDateFormat && mDateFormatTime != null) {
-                //60000ms in one minute
-                long differenceInTime = System.currentTimeMillis() - mDateFormatTime;
-                if (differenceInTime > 60000) {
-                    mIsCleanDateFormat = true;
-                }
-            }
-            if (mIsCleanDateFormat) {
-                date = mCleanDateFormat.format(mCalendar.getTime().getTime());
-            } else {
-                date = mStandardDateFormat.format(mCalendar.getTime().getTime());
-            }
-            Rect dateBounds = new Rect();
-            mDatePaint.getTextBounds(date, 0, date.length(), dateBounds);
-            int dateOffset = timeBounds.height() / 2 + dateBounds.height() / 2;
-            canvas.drawText(date, mCenterX - (mDatePaint.measureText(date) / 2) + mOffsetX, mCenterY - dateOffset + mOffsetY, mDatePaint);
-
-            Rect batteryBounds = new Rect();
-            mBatteryPaint.getTextBounds(mBatteryText, 0, mBatteryText.length(), batteryBounds);
-            int batteryOffset = timeBounds.height() / 2 + batteryBounds.height() + 20;
-            canvas.drawText(mBatteryText, mCenterX - (mBatteryPaint.measureText(mBatteryText) / 2) + mOffsetX, mCenterY + batteryOffset + mOffsetY, mBatteryPaint);
-
-            if (!mAmbient) {
-                /*
-                 * These calculations reflect the rotation in degrees per unit of time, e.g.,
-                 * 360 / 60 = 6 and 360 / 12 = 30.
-                 */
-                final float seconds = (mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f);
-                final float secondsRotation = seconds * 6f;
-                mHandPaint.setColor(((int) seconds) % 15 == 0 ? Color.CYAN : Color.WHITE);
-                canvas.save();
-                canvas.rotate(secondsRotation + 180, mCenterX, mCenterY);
-                float lengthOfSecondHand = 0.2f;
-                float secondHandStart = mCenterY + (mHeight / 2f) - ((mHeight / 2f) * lengthOfSecondHand);
-                canvas.drawLine(mCenterX, secondHandStart, mCenterX, mCenterY + mHeight / 2f, mHandPaint);
-                canvas.restore();
+        /**
+         * Saves the user's settings for the next engine, along with what the renderer adds to
+         * them.
+         */
+        private void saveWarmStart() {
+            WarmStartStore.State state = new WarmStartStore.State();
+            state.textScale = mTextScale;
+            state.silent = mSilentMode.isSilent();
+            state.offsetStep = mOffsets.getStep();
+            render(FaceRenderer.CMD_SAVE, 0, state);
+        }
+
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            //The framework only draws when there isn't a render thread
+            if (mRenderThread == null) {
+                mRenderer.draw(canvas);
             }
         }
 
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
+            Tracer.trace(Tracer.VISIBILITY_CHANGED, visible);
 
             if (visible) {
                 registerReceiver();
+                mChimeAudio.prepareAudio();
 
-                // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                //The time zone provider publishes the zone again, in case it changed while we
+                //weren't visible
                 invalidate();
             } else {
                 unregisterReceiver();
+                mChimeAudio.releaseAudio();
+                saveWarmStart();
             }
 
             /*
@@ -494,29 +514,75 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         }
 
         private void registerReceiver() {
-            if (mRegisteredTimeZoneReceiver) {
+            if (mRegisteredReceivers) {
                 return;
             }
-            mRegisteredTimeZoneReceiver = true;
-            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
-            MyWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
+            mRegisteredReceivers = true;
+            mDataPipeline.start();
+            mSilentMode.register();
         }
 
         private void unregisterReceiver() {
-            if (!mRegisteredTimeZoneReceiver) {
+            if (!mRegisteredReceivers) {
                 return;
             }
-            mRegisteredTimeZoneReceiver = false;
-            MyWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
+            mRegisteredReceivers = false;
+            mDataPipeline.stop();
+            mSilentMode.unregister();
         }
 
         private void updateTimer() {
+            mSchedule.setTimerRunning(shouldTimerBeRunning());
+            if (shouldTimerBeRunning() && mSweepEnabled) {
+                mSweepPacer.start();
+            } else {
+                mSweepPacer.stop();
+            }
+        }
+
+        @Override
+        public void setWakeup(long delayMs) {
+            mUpdateTimeHandler.removeMessages(R.id.message_update);
+            mUpdateTimeHandler.sendEmptyMessageDelayed(R.id.message_update, delayMs);
+        }
+
+        @Override
+        public void cancelWakeup() {
             mUpdateTimeHandler.removeMessages(R.id.message_update);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(R.id.message_update);
+        }
+
+        @Override
+        public void onBurnInStep() {
+            mOffsets.next();
+            mOffsetX = mOffsets.getX();
+            mOffsetY = mOffsets.getY();
+            render(FaceRenderer.CMD_OFFSET, FaceRenderer.pack(mOffsetX, mOffsetY), null);
+        }
+
+        @Override
+        public void onDateFormatRevert() {
+            mIsCleanDateFormat = true;
+            render(FaceRenderer.CMD_CLEAN_DATE, true);
+        }
+
+        @Override
+        public void onChimeAlarm() {
+            mSchedule.onChimeAlarm();
+        }
+
+        @Override
+        public void onChime(int hour) {
+            Tracer.trace(Tracer.CHIME, hour);
+            if (!mSilentMode.isSilent()) {
+                mChimeAudio.beep();
             }
         }
 
+        @Override
+        public void redraw() {
+            invalidate();
+        }
+
         /**
          * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer
          * should only run when we're visible and in interactive mode.
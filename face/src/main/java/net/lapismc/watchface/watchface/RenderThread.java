@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.watchface;
+
+import android.graphics.Canvas;
+import android.os.Process;
+import android.view.SurfaceHolder;
+
+import net.lapismc.watchface.model.CommandQueue;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws the face on a thread of its own, which locks and posts the surface itself instead of the
+ * framework doing so on the main thread. Taps, broadcasts and timers on the main thread then
+ * never hold up a frame, they only post commands for the {@link FaceRenderer}.
+ * <p>
+ * Commands go through a {@link CommandQueue} written only by the main thread and read only by
+ * the render thread, so posting one never allocates or waits. The render thread applies
+ * everything waiting, draws at most one frame for all of it and parks until the next command.
+ */
+final class RenderThread implements Runnable, CommandQueue.Consumer {
+
+    interface Listener {
+        /**
+         * Called on the render thread after a second hand frame, with how long it took to draw.
+         */
+        void onHandFrameDrawn(long drawNanos);
+    }
+
+    /* Commands handled by the thread itself, after the renderer's own. */
+    private static final int CMD_FRAME = FaceRenderer.COMMAND_COUNT;
+    private static final int CMD_HAND_FRAME = FaceRenderer.COMMAND_COUNT + 1;
+    private static final int COMMAND_COUNT = FaceRenderer.COMMAND_COUNT + 2;
+
+    /* Frames are coalesced, so this is only filled by a stuck render thread. */
+    private static final int CAPACITY = 64;
+
+    private final SurfaceHolder mHolder;
+    private final FaceRenderer mRenderer;
+    private final FrameMetrics mMetrics;
+    private final Listener mListener;
+    private final Thread mThread;
+
+    private final CommandQueue mQueue = new CommandQueue(CAPACITY, COMMAND_COUNT);
+    /* Whether a frame is already waiting, so more requests don't fill the queue. */
+    private volatile boolean mFramePending;
+    private volatile boolean mHandFramePending;
+    private volatile boolean mParked;
+    private volatile boolean mQuit;
+
+    /* The surface can only be drawn on between being changed and destroyed. */
+    private final Object mSurfaceLock = new Object();
+    private boolean mSurfaceValid;
+
+    /* When the frames asked for in the current drain were first requested, or 0. */
+    private long mFrameRequested;
+    private long mHandFrameRequested;
+
+    RenderThread(SurfaceHolder holder, FaceRenderer renderer, FrameMetrics metrics,
+                 Listener listener) {
+        mHolder = holder;
+        mRenderer = renderer;
+        mMetrics = metrics;
+        mListener = listener;
+        mThread = new Thread(this, "RenderThread");
+    }
+
+    void start() {
+        mThread.start();
+    }
+
+    /**
+     * Lets the thread finish what has been posted, then releases the renderer. Waits a short
+     * while for it so anything it saves is handed over before the engine goes away.
+     */
+    void quit() {
+        mQuit = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Posts a state change for the renderer, see {@link FaceRenderer#apply}. Main thread only.
+     */
+    void post(int command, long value, Object object) {
+        //Every command replaces state, so with the ring full only the latest of each is kept
+        if (!mQueue.post(command, value, object, System.nanoTime())) {
+            mMetrics.recordRenderCommandCoalesced();
+        }
+        if (mParked) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    /**
+     * Asks for a full frame, unless one is already waiting. Main thread only.
+     */
+    void requestFrame() {
+        if (!mFramePending) {
+            mFramePending = true;
+            post(CMD_FRAME, 0, null);
+        }
+    }
+
+    /**
+     * Asks for just the second hand to be redrawn. Main thread only.
+     */
+    void requestHandFrame() {
+        if (!mHandFramePending) {
+            mHandFramePending = true;
+            post(CMD_HAND_FRAME, 0, null);
+        }
+    }
+
+    /**
+     * Called from the engine's surface callbacks. Once this returns false the surface isn't
+     * touched again, waiting for a frame already being drawn on it to finish.
+     */
+    void setSurfaceValid(boolean valid) {
+        synchronized (mSurfaceLock) {
+            mSurfaceValid = valid;
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+        while (true) {
+            //Cleared before looking at the queue, so a request made after this is never lost
+            mFramePending = false;
+            mHandFramePending = false;
+            if (mQueue.isEmpty()) {
+                if (mQuit) {
+                    break;
+                }
+                mParked = true;
+                if (mQueue.isEmpty() && !mQuit) {
+                    LockSupport.park(this);
+                }
+                mParked = false;
+                continue;
+            }
+            mFrameRequested = 0;
+            mHandFrameRequested = 0;
+            mMetrics.recordRenderQueueDepth(mQueue.drain(this));
+            if (mFrameRequested != 0) {
+                drawFrame(mFrameRequested);
+            } else if (mHandFrameRequested != 0) {
+                drawHandFrame(mHandFrameRequested);
+            }
+        }
+        mRenderer.release();
+    }
+
+    @Override
+    public void onCommand(int command, long value, Object object, long postedNanos) {
+        if (command == CMD_FRAME) {
+            if (mFrameRequested == 0) {
+                mFrameRequested = postedNanos;
+            }
+        } else if (command == CMD_HAND_FRAME) {
+            if (mHandFrameRequested == 0) {
+                mHandFrameRequested = postedNanos;
+            }
+        } else {
+            mRenderer.apply(command, value, object);
+        }
+    }
+
+    private void drawFrame(long requestedNanos) {
+        synchronized (mSurfaceLock) {
+            if (!mSurfaceValid) {
+                return;
+            }
+            Canvas canvas = mHolder.lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                mRenderer.draw(canvas);
+            } finally {
+                mHolder.unlockCanvasAndPost(canvas);
+            }
+        }
+        mMetrics.recordRenderLatency(System.nanoTime() - requestedNanos);
+    }
+
+    private void drawHandFrame(long requestedNanos) {
+        long drawTime;
+        synchronized (mSurfaceLock) {
+            if (!mSurfaceValid) {
+                return;
+            }
+            drawTime = mRenderer.drawHandFrame(mHolder);
+        }
+        if (drawTime == FaceRenderer.NEEDS_FULL_FRAME) {
+            drawFrame(requestedNanos);
+        } else if (drawTime > 0) {
+            mMetrics.recordRenderLatency(System.nanoTime() - requestedNanos);
+            mListener.onHandFrameDrawn(drawTime);
+        }
+    }
+}
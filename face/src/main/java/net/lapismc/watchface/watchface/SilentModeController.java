@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioManager;
+
+/**
+ * Owns silent mode. While silent the notification stream is kept muted by reacting to volume and
+ * ringer mode changes, rather than by resetting the volume on every frame.
+ */
+final class SilentModeController {
+
+    private static final int STREAM = AudioManager.STREAM_NOTIFICATION;
+    /* Not part of the public SDK, but sent by the audio service whenever a stream volume changes. */
+    private static final String VOLUME_CHANGED_ACTION = "android.media.VOLUME_CHANGED_ACTION";
+    private static final String EXTRA_VOLUME_STREAM_TYPE = "android.media.EXTRA_VOLUME_STREAM_TYPE";
+
+    private final Context mContext;
+    private final FrameMetrics mMetrics;
+    private final AudioManager mAudioManager;
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (VOLUME_CHANGED_ACTION.equals(intent.getAction())) {
+                int stream = intent.getIntExtra(EXTRA_VOLUME_STREAM_TYPE, STREAM);
+                if (stream != STREAM) {
+                    return;
+                }
+            }
+            enforceMute();
+        }
+    };
+    private boolean mRegistered;
+    /* Written from the background thread by restore() during startup. */
+    private volatile boolean mSilent;
+
+    SilentModeController(Context context, FrameMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+        mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    /**
+     * Turns silent mode back on if it was active before a reboot, which we can tell from the
+     * notification volume not being at its maximum.
+     */
+    void restore() {
+        mMetrics.recordServiceCall();
+        int currentVolume = mAudioManager.getStreamVolume(STREAM);
+        mMetrics.recordServiceCall();
+        int maxVolume = mAudioManager.getStreamMaxVolume(STREAM);
+        if (maxVolume != currentVolume && !mSilent) {
+            setSilent(true);
+        }
+    }
+
+    /**
+     * Turns silent mode back on or off as an earlier engine left it, without asking the audio
+     * service. The volume is put right when the controller is registered.
+     */
+    void restore(boolean silent) {
+        mSilent = silent;
+    }
+
+    boolean isSilent() {
+        return mSilent;
+    }
+
+    void toggle() {
+        setSilent(!mSilent);
+    }
+
+    void setSilent(boolean silent) {
+        mSilent = silent;
+        //Process ring volume change for silent mode
+        if (silent) {
+            mMetrics.recordServiceCall();
+            mAudioManager.setStreamVolume(STREAM, 0, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+        } else {
+            mMetrics.recordServiceCall();
+            int maxVolume = mAudioManager.getStreamMaxVolume(STREAM);
+            mMetrics.recordServiceCall();
+            mAudioManager.setStreamVolume(STREAM, maxVolume, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+        }
+    }
+
+    void register() {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        IntentFilter filter = new IntentFilter(VOLUME_CHANGED_ACTION);
+        filter.addAction(AudioManager.RINGER_MODE_CHANGED_ACTION);
+        mMetrics.recordServiceCall();
+        mContext.registerReceiver(mReceiver, filter);
+        //Catch anything that changed the volume while we weren't listening
+        enforceMute();
+    }
+
+    void unregister() {
+        if (!mRegistered) {
+            return;
+        }
+        mRegistered = false;
+        mMetrics.recordServiceCall();
+        mContext.unregisterReceiver(mReceiver);
+    }
+
+    /**
+     * Mutes the stream again if something has turned it up while silent mode is active.
+     */
+    private void enforceMute() {
+        if (!mSilent) {
+            return;
+        }
+        mMetrics.recordServiceCall();
+        if (mAudioManager.getStreamVolume(STREAM) != 0) {
+            mMetrics.recordServiceCall();
+            mAudioManager.setStreamVolume(STREAM, 0, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+        }
+    }
+}
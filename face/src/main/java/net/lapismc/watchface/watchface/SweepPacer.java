@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the smooth sweep second hand to vsync. It drops to a lower frame rate when frames keep
+ * going over budget or the battery is low, and climbs back a step once frames have fitted the
+ * faster rate's budget for a while. At 1 Hz it stops asking for frames altogether, and the
+ * normal once a second tick takes over. With no sweep frames left to judge, a rate dropped to
+ * 1 Hz by slow frames stays there for the rest of the engine's life, while one dropped by low
+ * battery comes back when the battery does.
+ * <p>
+ * Must only be used from the main thread.
+ */
+final class SweepPacer implements Choreographer.FrameCallback {
+
+    interface Listener {
+        /**
+         * Called when the hand should be redrawn for the given vsync time.
+         */
+        void onSweepFrame(long frameTimeNanos);
+
+        /**
+         * Called when the rate the hand is drawn at changes.
+         */
+        void onSweepRateChanged(int hz);
+    }
+
+    /* The rates to step through, the first is every vsync on a 60 Hz screen. */
+    private static final int[] RATES_HZ = {60, 30, 15, 1};
+    private static final int LOWEST = RATES_HZ.length - 1;
+    /* Frames are judged in windows of this many, stepping down if enough of them are late. */
+    private static final int WINDOW_FRAMES = 30;
+    private static final int LATE_FRAMES_TO_STEP_DOWN = 3;
+    /* Windows in a row that would have been on time at the next rate up before stepping up. */
+    private static final int FAST_WINDOWS_TO_STEP_UP = 10;
+    /* A frame can start up to this early and still count as due, to absorb vsync jitter. */
+    private static final long FRAME_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private final Choreographer mChoreographer;
+    private final Listener mListener;
+    private boolean mRunning;
+    private boolean mLowBattery;
+    /* The rate chosen from frame timings, which low battery can override. */
+    private int mRateIndex;
+    private int mReportedHz;
+    private long mLastFrameNanos;
+    private int mWindowFrames;
+    private int mLateFrames;
+    /* Frames in the window that would have been late at the next rate up. */
+    private int mSlowFrames;
+    private int mFastWindows;
+
+    SweepPacer(Choreographer choreographer, Listener listener) {
+        mChoreographer = choreographer;
+        mListener = listener;
+        mReportedHz = currentHz();
+    }
+
+    /**
+     * Starts asking for frames, unless the rate is down to 1 Hz.
+     */
+    void start() {
+        if (mRunning || currentHz() == 1) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        mChoreographer.postFrameCallback(this);
+    }
+
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mChoreographer.removeFrameCallback(this);
+    }
+
+    void setLowBattery(boolean lowBattery) {
+        mLowBattery = lowBattery;
+        updateRate();
+    }
+
+    /**
+     * Returns the rate the hand is currently drawn at.
+     */
+    int currentHz() {
+        return RATES_HZ[mLowBattery ? LOWEST : mRateIndex];
+    }
+
+    /**
+     * Records how long a hand frame took to draw, stepping the rate down if too many frames
+     * in the current window have gone over half their time, or up if every frame for the last
+     * few windows would have fitted in half the time of the next rate up.
+     */
+    void recordFrame(long drawNanos) {
+        if (drawNanos > intervalNanos() / 2) {
+            mLateFrames++;
+        }
+        if (mRateIndex > 0 && drawNanos > intervalNanos(mRateIndex - 1) / 2) {
+            mSlowFrames++;
+        }
+        mWindowFrames++;
+        if (mLateFrames >= LATE_FRAMES_TO_STEP_DOWN) {
+            stepDown();
+        } else if (mWindowFrames >= WINDOW_FRAMES) {
+            endWindow();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        mChoreographer.postFrameCallback(this);
+        long interval = intervalNanos();
+        long elapsed = frameTimeNanos - mLastFrameNanos;
+        if (mLastFrameNanos != 0 && elapsed < interval - FRAME_TOLERANCE_NANOS) {
+            return;
+        }
+        //Missing a whole frame means the main thread couldn't keep up
+        if (mLastFrameNanos != 0 && elapsed > interval * 2) {
+            mLateFrames++;
+        }
+        mLastFrameNanos = frameTimeNanos;
+        mListener.onSweepFrame(frameTimeNanos);
+    }
+
+    private long intervalNanos() {
+        return TimeUnit.SECONDS.toNanos(1) / currentHz();
+    }
+
+    private static long intervalNanos(int rateIndex) {
+        return TimeUnit.SECONDS.toNanos(1) / RATES_HZ[rateIndex];
+    }
+
+    private void endWindow() {
+        if (mRateIndex > 0 && mLateFrames == 0 && mSlowFrames == 0) {
+            mFastWindows++;
+        } else {
+            mFastWindows = 0;
+        }
+        if (mFastWindows >= FAST_WINDOWS_TO_STEP_UP) {
+            stepUp();
+        } else {
+            clearWindow();
+        }
+    }
+
+    private void stepDown() {
+        mFastWindows = 0;
+        clearWindow();
+        if (mRateIndex < LOWEST) {
+            mRateIndex++;
+        }
+        updateRate();
+    }
+
+    private void stepUp() {
+        mFastWindows = 0;
+        clearWindow();
+        mRateIndex--;
+        updateRate();
+    }
+
+    private void clearWindow() {
+        mWindowFrames = 0;
+        mLateFrames = 0;
+        mSlowFrames = 0;
+    }
+
+    private void updateRate() {
+        int hz = currentHz();
+        if (hz == mReportedHz) {
+            return;
+        }
+        mReportedHz = hz;
+        if (hz == 1) {
+            stop();
+        }
+        mListener.onSweepRateChanged(hz);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+
+import java.util.TimeZone;
+
+/**
+ * Publishes the default time zone, and again whenever it changes.
+ */
+final class TimeZoneProvider implements DataProvider {
+
+    private final Context mContext;
+    private final FrameMetrics mMetrics;
+    private DataPipeline mPipeline;
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            //The default zone is updated on the main thread, which may not have got to it yet
+            String id = intent.getStringExtra(Intent.EXTRA_TIMEZONE);
+            mPipeline.publishTimeZone(id == null ? TimeZone.getDefault() : TimeZone.getTimeZone(id));
+        }
+    };
+    private boolean mRegistered;
+
+    TimeZoneProvider(Context context, FrameMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void start(DataPipeline pipeline, Handler handler) {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        mPipeline = pipeline;
+        mMetrics.recordServiceCall();
+        mContext.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED),
+                null, handler);
+        //Catch any change made while we weren't listening
+        pipeline.publishTimeZone(TimeZone.getDefault());
+    }
+
+    @Override
+    public void stop() {
+        if (!mRegistered) {
+            return;
+        }
+        mRegistered = false;
+        mMetrics.recordServiceCall();
+        mContext.unregisterReceiver(mReceiver);
+    }
+}
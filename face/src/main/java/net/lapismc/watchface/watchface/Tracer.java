@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.watchface;
+
+import net.lapismc.watchface.BuildConfig;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Records watch face events into a fixed size in memory ring buffer, which is printed along with
+ * the metrics by dumpsys. Tracing compiles away in release builds, in debug builds the level can
+ * be changed at runtime with {@code dumpsys activity service MyWatchFaceService trace <level>}.
+ * <p>
+ * Events can be traced from the main thread and the render thread, so writing one takes a lock.
+ * Only debug builds pay for it.
+ */
+final class Tracer {
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    static final int LEVEL_OFF = 0;
+    static final int LEVEL_EVENTS = 1;
+    static final int LEVEL_FRAMES = 2;
+    private static final String[] LEVEL_NAMES = {"off", "events", "frames"};
+
+    static final int FRAME_START = 0;
+    static final int FRAME_END = 1;
+    static final int AMBIENT_CHANGED = 2;
+    static final int VISIBILITY_CHANGED = 3;
+    static final int TAP = 4;
+    static final int SILENT_MODE_CHANGED = 5;
+    static final int DATE_FORMAT_CHANGED = 6;
+    static final int CHIME = 7;
+    static final int FIRST_FRAME = 8;
+    static final int FULLY_STYLED = 9;
+    static final int TAP_TO_FRAME = 10;
+    static final int SECOND_HAND_RATE = 11;
+    private static final String[] EVENT_NAMES = {"frame start (mode)", "frame end (us)",
+            "ambient", "visible", "tap (x << 16 | y)", "silent mode", "clean date format",
+            "chime (hour)", "first frame (ms)", "fully styled (ms)", "tap to frame (us)",
+            "second hand rate (Hz)"};
+    private static final int[] EVENT_LEVELS = {LEVEL_FRAMES, LEVEL_FRAMES, LEVEL_EVENTS,
+            LEVEL_EVENTS, LEVEL_EVENTS, LEVEL_EVENTS, LEVEL_EVENTS, LEVEL_EVENTS, LEVEL_EVENTS,
+            LEVEL_EVENTS, LEVEL_EVENTS, LEVEL_EVENTS};
+
+    private static final int CAPACITY = 512;
+    private static final long[] sTimes = ENABLED ? new long[CAPACITY] : null;
+    private static final int[] sTypes = ENABLED ? new int[CAPACITY] : null;
+    private static final long[] sValues = ENABLED ? new long[CAPACITY] : null;
+    /* Total number of events recorded, the next slot is sCount % CAPACITY. */
+    private static long sCount;
+    private static volatile int sLevel = LEVEL_EVENTS;
+
+    private Tracer() {
+    }
+
+    static void trace(int type, long value) {
+        if (!ENABLED || sLevel < EVENT_LEVELS[type]) {
+            return;
+        }
+        synchronized (Tracer.class) {
+            int slot = (int) (sCount % CAPACITY);
+            sTimes[slot] = System.currentTimeMillis();
+            sTypes[slot] = type;
+            sValues[slot] = value;
+            sCount++;
+        }
+    }
+
+    static void trace(int type, boolean value) {
+        trace(type, value ? 1 : 0);
+    }
+
+    /**
+     * Sets the level from its name, returning false if the name isn't recognised.
+     */
+    static boolean setLevel(String name) {
+        for (int level = 0; level < LEVEL_NAMES.length; level++) {
+            if (LEVEL_NAMES[level].equals(name)) {
+                sLevel = level;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static synchronized void dump(PrintWriter writer) {
+        if (!ENABLED) {
+            writer.println("Trace: not available in release builds");
+            return;
+        }
+        writer.println("Trace (level " + LEVEL_NAMES[sLevel] + ", " + sCount + " events):");
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ENGLISH);
+        long count = sCount;
+        for (long i = Math.max(0, count - CAPACITY); i < count; i++) {
+            int slot = (int) (i % CAPACITY);
+            writer.println("  " + format.format(new Date(sTimes[slot])) + " "
+                    + EVENT_NAMES[sTypes[slot]] + ": " + sValues[slot]);
+        }
+    }
+}
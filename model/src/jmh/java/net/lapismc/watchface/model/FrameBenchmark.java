@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the work done for each frame, and of the rebuild done once a minute. Run with the gc
+ * profiler (the default for this module) to check the per frame path doesn't allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameBenchmark {
+
+    private static final long START = 1600000000000L;
+    private static final long FRAME_MS = 1000;
+    private static final long MINUTE_MS = 60000;
+
+    private final TimeSnapshot mTime = new TimeSnapshot();
+    private final FaceLayout mLayout = new FaceLayout();
+    private final TextBuffer mBattery = new TextBuffer(8);
+    private BurnInOffsets mOffsets;
+    private long mNow;
+    private int mBatteryLevel;
+
+    @Setup
+    public void setUp() {
+        mTime.setTimeZone(TimeZone.getTimeZone("Australia/Adelaide"));
+        mOffsets = new BurnInOffsets(30);
+        mNow = START;
+        mTime.update(mNow);
+    }
+
+    /**
+     * A frame within the current minute: advance the time, position the hand and work out
+     * when the next tick is due.
+     */
+    @Benchmark
+    public void frame(Blackhole blackhole) {
+        mNow += FRAME_MS;
+        if (mNow - START >= MINUTE_MS) {
+            //Stay inside the first minute so only per frame work is measured
+            mNow = START;
+        }
+        blackhole.consume(mTime.update(mNow));
+        blackhole.consume(mTime.getSeconds() * 6f);
+        blackhole.consume(TickMath.delayToNextTick(mNow, FRAME_MS));
+    }
+
+    /**
+     * The work done when a new minute starts: reformat the time (and the date when the day
+     * changes), the battery text, and lay everything out again.
+     */
+    @Benchmark
+    public void minuteRebuild(Blackhole blackhole) {
+        mNow += MINUTE_MS;
+        blackhole.consume(mTime.update(mNow));
+        mBatteryLevel = (mBatteryLevel + 1) % 101;
+        mBattery.formatPercent(mBatteryLevel);
+        mLayout.layout(227f, 227f,
+                mTime.getTimeText().length() * 40f, 70,
+                mTime.getDateText(true).length() * 10f, 16,
+                mBattery.length() * 25f, 40);
+        blackhole.consume(mLayout.getTimeX());
+    }
+
+    @Benchmark
+    public void burnInOffset(Blackhole blackhole) {
+        mOffsets.next();
+        blackhole.consume(mOffsets.getX());
+        blackhole.consume(mOffsets.getY());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+/**
+ * Steps the face content through a fixed path of offsets to prevent burn in. The path is worked
+ * out once and visits every offset in the window exactly once before repeating, jumping across
+ * the window between steps, so over time every pixel spends as long at each offset as any other.
+ */
+public final class BurnInOffsets {
+
+    /* Fraction of the path skipped on each step, near the golden ratio to spread the steps out. */
+    private static final double STRIDE_FRACTION = 0.618;
+
+    private final short[] mPathX;
+    private final short[] mPathY;
+    private int mStep = -1;
+    private int mX;
+    private int mY;
+
+    /**
+     * @param variance offsets are kept strictly within plus or minus this many pixels
+     */
+    public BurnInOffsets(int variance) {
+        int side = variance * 2 - 1;
+        int length = side * side;
+        int stride = (int) Math.round(length * STRIDE_FRACTION);
+        while (gcd(stride, length) != 1) {
+            stride++;
+        }
+        mPathX = new short[length];
+        mPathY = new short[length];
+        int position = 0;
+        for (int step = 0; step < length; step++) {
+            mPathX[step] = (short) (position % side - (variance - 1));
+            mPathY[step] = (short) (position / side - (variance - 1));
+            position = (position + stride) % length;
+        }
+    }
+
+    /**
+     * Moves to the next offset on the path.
+     */
+    public void next() {
+        mStep = (mStep + 1) % mPathX.length;
+        mX = mPathX[mStep];
+        mY = mPathY[mStep];
+    }
+
+    /**
+     * Returns how far along the path the offsets are, or -1 before the first step.
+     */
+    public int getStep() {
+        return mStep;
+    }
+
+    /**
+     * Moves to a step returned by {@link #getStep()}, so the path can carry on where it left off.
+     */
+    public void setStep(int step) {
+        if (step < 0) {
+            mStep = -1;
+            mX = 0;
+            mY = 0;
+            return;
+        }
+        mStep = step % mPathX.length;
+        mX = mPathX[mStep];
+        mY = mPathY[mStep];
+    }
+
+    public int getX() {
+        return mX;
+    }
+
+    public int getY() {
+        return mY;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
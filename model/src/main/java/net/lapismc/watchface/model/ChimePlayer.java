@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+/**
+ * Plays the chime from PCM that is decoded once, so starting playback only has to rewind what
+ * the sink already holds. The sink is only held open while the face is visible, the decoded clip
+ * is small enough to keep.
+ * <p>
+ * This is not thread safe, all calls are expected to come from the same background thread.
+ */
+public final class ChimePlayer {
+
+    private final PcmDecoder mDecoder;
+    private final ChimeSink mSink;
+    private PcmClip mClip;
+    private boolean mOpen;
+
+    public ChimePlayer(PcmDecoder decoder, ChimeSink sink) {
+        mDecoder = decoder;
+        mSink = sink;
+    }
+
+    /**
+     * Decodes the clip if that hasn't happened yet and opens the sink, so the next call to
+     * {@link #play(float)} can start straight away.
+     */
+    public void prepare() {
+        if (mOpen) {
+            return;
+        }
+        if (mClip == null) {
+            mClip = mDecoder.decode();
+            if (mClip == null) {
+                return;
+            }
+        }
+        mOpen = mSink.open(mClip);
+    }
+
+    public void play(float volume) {
+        prepare();
+        if (mOpen) {
+            mSink.play(volume);
+        }
+    }
+
+    /**
+     * Closes the sink. The decoded clip is kept so it doesn't need decoding again.
+     */
+    public void release() {
+        if (mOpen) {
+            mSink.close();
+            mOpen = false;
+        }
+    }
+
+    /**
+     * Returns the bytes of audio held for the chime: the decoded clip, and while the sink is
+     * open the copy a static audio track keeps of it.
+     */
+    public long getResidentBytes() {
+        if (mClip == null) {
+            return 0;
+        }
+        return mOpen ? mClip.getByteCount() * 2 : mClip.getByteCount();
+    }
+}
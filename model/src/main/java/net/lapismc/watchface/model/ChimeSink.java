@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+/**
+ * Where the chime is played, an AudioTrack on the watch and a fake in tests.
+ */
+public interface ChimeSink {
+
+    /**
+     * Loads the clip ready to play, returning false if the output couldn't be opened. The
+     * samples aren't changed afterwards, the sink can keep them or make its own copy.
+     */
+    boolean open(PcmClip clip);
+
+    /**
+     * Plays the loaded clip from the start, cutting off an earlier play that hasn't finished.
+     */
+    void play(float volume);
+
+    void close();
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+/**
+ * Builds the hourly chime vibration pattern: two alert pulses, a break, then one pulse for
+ * each hour on the 12 hour clock.
+ */
+public final class ChimeWaveforms {
+
+    /* 2 alert vibes + 1 break + 12 hours * 2 */
+    public static final int LENGTH = 27;
+
+    private ChimeWaveforms() {
+    }
+
+    /**
+     * Returns the vibration timings, these are the same for every hour.
+     */
+    public static long[] buildTimings() {
+        long[] timings = new long[LENGTH];
+        timings[0] = 750;
+        timings[1] = 500;
+        timings[2] = 1000;
+        for (int i = 3; i < timings.length; i++) {
+            //(i % 2 == 0) = off time
+            // 100 off, 250 on
+            timings[i] = i % 2 == 0 ? 200 : 250;
+        }
+        return timings;
+    }
+
+    /**
+     * Returns the vibration amplitudes for the given hour, one strong pulse per hour.
+     */
+    public static int[] buildAmplitudes(int hour) {
+        int[] amplitudes = new int[LENGTH];
+        amplitudes[0] = 100;
+        amplitudes[1] = 255;
+        amplitudes[2] = 0;
+        for (int i = 3; i < amplitudes.length; i++) {
+            // 0 off, 255 on
+            amplitudes[i] = i % 2 == 0 || (i / 2) > hour ? 0 : 255;
+        }
+        return amplitudes;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+/**
+ * Hands commands from one producer thread to one consumer thread. Commands go through a fixed
+ * size ring, so posting one normally never allocates or takes a lock. Each command replaces some
+ * state rather than adding to it, so only the latest of each type matters, and once the ring is
+ * full the producer never waits. Further commands are coalesced into one slot per type under a
+ * short lock instead.
+ * <p>
+ * Commands are small integers below the command count, with their value in a long and an
+ * optional object that the producer no longer touches. Commands reach the consumer in the order
+ * they were posted, except that coalesced ones come after the whole ring, in command order.
+ */
+public final class CommandQueue {
+
+    public interface Consumer {
+        /**
+         * Called on the consumer thread for each command, with the System.nanoTime() it was
+         * posted at.
+         */
+        void onCommand(int command, long value, Object object, long postedNanos);
+    }
+
+    private final int mMask;
+    private final int[] mCommands;
+    private final long[] mValues;
+    private final Object[] mObjects;
+    private final long[] mPostedNanos;
+    /* Commands posted and taken so far, the slots are these modulo the capacity. */
+    private volatile long mPosted;
+    private volatile long mTaken;
+
+    /*
+     * The latest of each command posted once the ring was full. While any are waiting every
+     * command comes here, so none can overtake an older one of the same type in the ring.
+     */
+    private final Object mOverflowLock = new Object();
+    private volatile boolean mOverflowing;
+    private final boolean[] mOverflowSet;
+    private final long[] mOverflowValues;
+    private final Object[] mOverflowObjects;
+    private final long[] mOverflowNanos;
+    /* The consumer's copy, so commands are handled outside the lock. */
+    private final boolean[] mDrainSet;
+    private final long[] mDrainValues;
+    private final Object[] mDrainObjects;
+    private final long[] mDrainNanos;
+
+    /**
+     * @param capacity     how many commands the ring holds, a power of two
+     * @param commandCount how many types of command there are
+     */
+    public CommandQueue(int capacity, int commandCount) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        mMask = capacity - 1;
+        mCommands = new int[capacity];
+        mValues = new long[capacity];
+        mObjects = new Object[capacity];
+        mPostedNanos = new long[capacity];
+        mOverflowSet = new boolean[commandCount];
+        mOverflowValues = new long[commandCount];
+        mOverflowObjects = new Object[commandCount];
+        mOverflowNanos = new long[commandCount];
+        mDrainSet = new boolean[commandCount];
+        mDrainValues = new long[commandCount];
+        mDrainObjects = new Object[commandCount];
+        mDrainNanos = new long[commandCount];
+    }
+
+    /**
+     * Posts a command. Producer thread only.
+     *
+     * @return false if the ring was full and the command was coalesced with any earlier one of
+     * the same type that was still waiting
+     */
+    public boolean post(int command, long value, Object object, long nanos) {
+        long posted = mPosted;
+        if (!mOverflowing && posted - mTaken <= mMask) {
+            int slot = (int) (posted & mMask);
+            mCommands[slot] = command;
+            mValues[slot] = value;
+            mObjects[slot] = object;
+            mPostedNanos[slot] = nanos;
+            //Publishing the count makes the slot visible to the consumer
+            mPosted = posted + 1;
+            return true;
+        }
+        synchronized (mOverflowLock) {
+            mOverflowing = true;
+            mOverflowSet[command] = true;
+            mOverflowValues[command] = value;
+            mOverflowObjects[command] = object;
+            mOverflowNanos[command] = nanos;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether there is nothing waiting. Safe to call from either thread.
+     */
+    public boolean isEmpty() {
+        return mPosted == mTaken && !mOverflowing;
+    }
+
+    /**
+     * Hands everything waiting to the consumer. Consumer thread only.
+     *
+     * @return how many commands were handed over
+     */
+    public int drain(Consumer consumer) {
+        int count = 0;
+        while (true) {
+            long posted = mPosted;
+            long taken = mTaken;
+            for (; taken < posted; taken++) {
+                int slot = (int) (taken & mMask);
+                Object object = mObjects[slot];
+                mObjects[slot] = null;
+                consumer.onCommand(mCommands[slot], mValues[slot], object, mPostedNanos[slot]);
+                count++;
+            }
+            mTaken = taken;
+            if (!mOverflowing) {
+                return count;
+            }
+            synchronized (mOverflowLock) {
+                //The ring may have had more added before the producer started coalescing
+                if (mPosted != taken) {
+                    continue;
+                }
+                for (int command = 0; command < mOverflowSet.length; command++) {
+                    mDrainSet[command] = mOverflowSet[command];
+                    mDrainValues[command] = mOverflowValues[command];
+                    mDrainObjects[command] = mOverflowObjects[command];
+                    mDrainNanos[command] = mOverflowNanos[command];
+                    mOverflowSet[command] = false;
+                    mOverflowObjects[command] = null;
+                }
+                mOverflowing = false;
+            }
+            //Anything posted from here on is newer, and is picked up by the next drain
+            for (int command = 0; command < mDrainSet.length; command++) {
+                if (mDrainSet[command]) {
+                    Object object = mDrainObjects[command];
+                    mDrainObjects[command] = null;
+                    consumer.onCommand(command, mDrainValues[command], object, mDrainNanos[command]);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
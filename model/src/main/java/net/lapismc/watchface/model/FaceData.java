@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import java.util.TimeZone;
+
+/**
+ * Immutable snapshot of the data shown on the face, published through a {@link FaceDataStore}.
+ */
+public final class FaceData {
+
+    /**
+     * Levels at or below this are shown as low battery.
+     */
+    private static final int LOW_BATTERY_LEVEL = 30;
+
+    /* Nothing has been published yet. */
+    public static final FaceData EMPTY = new FaceData(-1, null, 0, 0);
+
+    /* Battery percentage, or -1 if not known yet. */
+    public final int batteryLevel;
+    public final boolean batteryLow;
+    /* The time zone to show the time in, or null to keep the current one. */
+    public final TimeZone timeZone;
+    /* Goes up by one with each snapshot published. */
+    public final long sequence;
+    /* When this snapshot was published, from System.nanoTime, or 0 if it wasn't. */
+    public final long publishedNanos;
+
+    public FaceData(int batteryLevel, TimeZone timeZone, long sequence, long publishedNanos) {
+        this.batteryLevel = batteryLevel;
+        this.batteryLow = batteryLevel >= 0 && batteryLevel <= LOW_BATTERY_LEVEL;
+        this.timeZone = timeZone;
+        this.sequence = sequence;
+        this.publishedNanos = publishedNanos;
+    }
+
+    /**
+     * Returns how long ago this snapshot was published, or -1 for data that was never
+     * published, such as {@link #EMPTY} or data restored from an earlier engine.
+     */
+    public long ageNanos(long nowNanos) {
+        return publishedNanos == 0 ? -1 : nowNanos - publishedNanos;
+    }
+}
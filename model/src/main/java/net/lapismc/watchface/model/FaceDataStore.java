@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the latest {@link FaceData} snapshot. A new snapshot is built next to the current one
+ * and swapped in with a compare and set, so readers never block and never see a half updated
+ * snapshot, and publishers on different threads never lose each other's changes.
+ * <p>
+ * The listener is told once that there is something new, and not again until the consumer has
+ * taken it, however many snapshots are published in between.
+ */
+public final class FaceDataStore {
+
+    public interface Listener {
+        /**
+         * Called on the publishing thread when a snapshot is published and the consumer has
+         * taken every earlier one.
+         */
+        void onDataPending();
+    }
+
+    private final AtomicReference<FaceData> mLatest;
+    private final AtomicBoolean mPending = new AtomicBoolean();
+    private final Listener mListener;
+
+    /**
+     * @param initial the data to show until something is published, such as that saved by an
+     *                earlier engine
+     */
+    public FaceDataStore(FaceData initial, Listener listener) {
+        mLatest = new AtomicReference<>(initial);
+        mListener = listener;
+    }
+
+    /**
+     * Returns the latest snapshot. This never blocks and is safe to call from any thread.
+     */
+    public FaceData getLatest() {
+        return mLatest.get();
+    }
+
+    /**
+     * Returns the latest snapshot and lets the next publish tell the listener again.
+     */
+    public FaceData takePending() {
+        //Cleared first, so a publish racing with this is either returned now or notified again
+        mPending.set(false);
+        return mLatest.get();
+    }
+
+    /**
+     * Publishes a new battery level. Safe to call from any thread.
+     *
+     * @return whether a new snapshot was published, which it isn't if the level is unchanged
+     */
+    public boolean publishBattery(int level, long nowNanos) {
+        FaceData current;
+        FaceData next;
+        do {
+            current = mLatest.get();
+            if (current.batteryLevel == level) {
+                return false;
+            }
+            next = new FaceData(level, current.timeZone, current.sequence + 1, nowNanos);
+        } while (!mLatest.compareAndSet(current, next));
+        notifyListener();
+        return true;
+    }
+
+    /**
+     * Publishes a new time zone. Safe to call from any thread.
+     *
+     * @return whether a new snapshot was published, which it isn't if the zone is unchanged
+     */
+    public boolean publishTimeZone(TimeZone timeZone, long nowNanos) {
+        FaceData current;
+        FaceData next;
+        do {
+            current = mLatest.get();
+            if (timeZone.equals(current.timeZone)) {
+                return false;
+            }
+            next = new FaceData(current.batteryLevel, timeZone, current.sequence + 1, nowNanos);
+        } while (!mLatest.compareAndSet(current, next));
+        notifyListener();
+        return true;
+    }
+
+    private void notifyListener() {
+        //Several publishes before the consumer gets to it only need one notification
+        if (mPending.compareAndSet(false, true)) {
+            mListener.onDataPending();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+/**
+ * Works out where the time, date and battery text go from their measured sizes. The time is
+ * centred on the screen, with the date above it and the battery level below it.
+ */
+public final class FaceLayout {
+
+    /* Gap between the bottom of the time and the top of the battery level. */
+    private static final int BATTERY_GAP = 20;
+
+    private float mTimeX, mTimeY, mTimeWidth;
+    private int mTimeHeight;
+    private float mDateX, mDateY, mDateWidth;
+    private int mDateHeight;
+    private float mBatteryX, mBatteryY, mBatteryWidth;
+    private int mBatteryHeight;
+
+    /**
+     * Lays out the text around the given centre. Text positions are for the left end of the
+     * baseline, as used by Canvas.drawText. Burn in offsets aren't part of the layout, the
+     * content is shifted as a whole when it is drawn.
+     */
+    public void layout(float centerX, float centerY,
+                       float timeWidth, int timeHeight,
+                       float dateWidth, int dateHeight,
+                       float batteryWidth, int batteryHeight) {
+        int timeOffset = timeHeight / 2;
+        mTimeWidth = timeWidth;
+        mTimeHeight = timeHeight;
+        mTimeX = centerX - (timeWidth / 2);
+        mTimeY = centerY + timeOffset;
+
+        int dateOffset = timeHeight / 2 + dateHeight / 2;
+        mDateWidth = dateWidth;
+        mDateHeight = dateHeight;
+        mDateX = centerX - (dateWidth / 2);
+        mDateY = centerY - dateOffset;
+
+        int batteryOffset = timeHeight / 2 + batteryHeight + BATTERY_GAP;
+        mBatteryWidth = batteryWidth;
+        mBatteryHeight = batteryHeight;
+        mBatteryX = centerX - (batteryWidth / 2);
+        mBatteryY = centerY + batteryOffset;
+    }
+
+    public float getTimeX() {
+        return mTimeX;
+    }
+
+    public float getTimeY() {
+        return mTimeY;
+    }
+
+    public float getTimeWidth() {
+        return mTimeWidth;
+    }
+
+    public int getTimeHeight() {
+        return mTimeHeight;
+    }
+
+    public float getDateX() {
+        return mDateX;
+    }
+
+    public float getDateY() {
+        return mDateY;
+    }
+
+    public float getDateWidth() {
+        return mDateWidth;
+    }
+
+    public int getDateHeight() {
+        return mDateHeight;
+    }
+
+    public float getBatteryX() {
+        return mBatteryX;
+    }
+
+    public float getBatteryY() {
+        return mBatteryY;
+    }
+
+    public float getBatteryWidth() {
+        return mBatteryWidth;
+    }
+
+    public int getBatteryHeight() {
+        return mBatteryHeight;
+    }
+}
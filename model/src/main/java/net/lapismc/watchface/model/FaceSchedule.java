@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the face wakes up and what it does when it does: the interactive tick, moving
+ * the content to prevent burn in, going back to the clean date format and the hourly chime. The
+ * engine feeds it what happens to the face and does what the {@link Host} is told, so the same
+ * timing can be replayed through a whole day without a watch.
+ */
+public final class FaceSchedule {
+
+    /**
+     * Update rate in milliseconds for interactive mode. We update once a second to advance the
+     * second hand.
+     */
+    public static final long TICK_MS = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * How often the content is moved to prevent burn in. In ambient mode it moves on every
+     * minute tick.
+     */
+    public static final long BURN_IN_OFFSET_PERIOD_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * How long the standard date format is shown after tapping the time before going back to
+     * the clean format.
+     */
+    public static final long DATE_FORMAT_REVERT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * What the schedule needs the engine to do. Every call comes from whichever call into the
+     * schedule caused it.
+     */
+    public interface Host {
+
+        /**
+         * Calls {@link #onWakeup()} after the delay, replacing any pending wakeup.
+         */
+        void setWakeup(long delayMs);
+
+        void cancelWakeup();
+
+        /**
+         * Moves the content one step to prevent burn in.
+         */
+        void onBurnInStep();
+
+        /**
+         * Goes back to the clean date format.
+         */
+        void onDateFormatRevert();
+
+        /**
+         * Beeps for the hour unless silent mode is on, the vibration has already been started.
+         */
+        void onChime(int hour);
+
+        /**
+         * Something shown has changed, so the face needs drawing again.
+         */
+        void redraw();
+    }
+
+    /* Tasks kept on mTasks, all run from a wakeup or the ambient time tick. */
+    private static final int TASK_TICK = 0;
+    private static final int TASK_BURN_IN_OFFSET = 1;
+    private static final int TASK_DATE_FORMAT_REVERT = 2;
+
+    private final Clock mClock;
+    private final SystemServices mServices;
+    private final Host mHost;
+    private final TaskTimeline mTasks = new TaskTimeline(3);
+    private final Calendar mCalendar = Calendar.getInstance();
+    private boolean mTimerRunning;
+    /* When the pending wakeup is due, or 0 if there isn't one. */
+    private long mNextWakeupTime;
+    private long mNextChimeTime;
+
+    public FaceSchedule(Clock clock, SystemServices services, Host host) {
+        mClock = clock;
+        mServices = services;
+        mHost = host;
+        mTasks.schedule(TASK_BURN_IN_OFFSET, clock.currentTimeMillis() + BURN_IN_OFFSET_PERIOD_MS,
+                BURN_IN_OFFSET_PERIOD_MS);
+    }
+
+    /**
+     * Starts or stops the interactive tick. Without it there is no wakeup of our own, tasks wait
+     * for {@link #onAmbientTick()} instead.
+     */
+    public void setTimerRunning(boolean running) {
+        long now = mClock.currentTimeMillis();
+        /*
+         * Whatever came due while waiting for the minute tick, or is due as the tick stops, runs
+         * now. Left to the first wakeup it would take that second's tick early with it, and left
+         * to the ambient tick it could wait most of a minute longer.
+         */
+        runScheduledTasks(now, 0);
+        mTimerRunning = running;
+        if (running) {
+            mTasks.schedule(TASK_TICK, TickMath.nextTickTime(now, TICK_MS), TICK_MS);
+        } else {
+            mTasks.cancel(TASK_TICK);
+        }
+        scheduleWakeup(now);
+    }
+
+    /**
+     * Runs everything due before the next tick and sets up the following wakeup.
+     *
+     * @return how late the wakeup was in milliseconds, or -1 if none was pending
+     */
+    public long onWakeup() {
+        long now = mClock.currentTimeMillis();
+        long lateness = mNextWakeupTime == 0 ? -1 : now - mNextWakeupTime;
+        //Anything due before the next tick is run now rather than waking up for it
+        runScheduledTasks(now, TICK_MS - 1);
+        scheduleWakeup(now);
+        return lateness;
+    }
+
+    /**
+     * Runs any task that has come due. In ambient mode the minute time tick is the only wakeup.
+     */
+    public void onAmbientTick() {
+        runScheduledTasks(mClock.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Goes back to the clean date format after a while if the standard one is now shown.
+     */
+    public void setCleanDateFormat(boolean clean) {
+        if (clean) {
+            mTasks.cancel(TASK_DATE_FORMAT_REVERT);
+        } else {
+            mTasks.schedule(TASK_DATE_FORMAT_REVERT, mClock.currentTimeMillis() + DATE_FORMAT_REVERT_MS, 0);
+        }
+    }
+
+    /**
+     * Sets the chime alarm for the next hour boundary in the given time zone, replacing any
+     * pending one. This should be called again when the time zone changes.
+     */
+    public void scheduleChime(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mNextChimeTime = TickMath.nextHourBoundary(mCalendar, mClock.currentTimeMillis());
+        mServices.setChimeAlarm(mNextChimeTime);
+    }
+
+    /**
+     * Chimes the hour the alarm was set for and sets it for the next one.
+     */
+    public void onChimeAlarm() {
+        //Use the time we were scheduled for in case the alarm was delivered a little late
+        mCalendar.setTimeInMillis(mNextChimeTime);
+        int hour = mCalendar.get(Calendar.HOUR);
+        if (hour == 0) hour = 12;
+        mServices.vibrateHour(hour);
+        mHost.onChime(hour);
+        scheduleChime(mCalendar.getTimeZone());
+    }
+
+    /**
+     * Sets the wakeup for the earliest task, if the timer is running.
+     */
+    private void scheduleWakeup(long now) {
+        long next = mTasks.nextDeadline();
+        if (!mTimerRunning || next == TaskTimeline.NONE) {
+            mNextWakeupTime = 0;
+            mHost.cancelWakeup();
+            return;
+        }
+        mNextWakeupTime = next;
+        mHost.setWakeup(Math.max(0, next - now));
+    }
+
+    /**
+     * Runs every task due by now plus the slack, then redraws to show the result.
+     */
+    private void runScheduledTasks(long now, long slack) {
+        int due = mTasks.collectDue(now, slack);
+        if (due == 0) {
+            return;
+        }
+        if (TaskTimeline.isDue(due, TASK_BURN_IN_OFFSET)) {
+            mHost.onBurnInStep();
+        }
+        if (TaskTimeline.isDue(due, TASK_DATE_FORMAT_REVERT)) {
+            mHost.onDateFormatRevert();
+        }
+        //Every task, including the tick itself, changes what is shown
+        mHost.redraw();
+    }
+}
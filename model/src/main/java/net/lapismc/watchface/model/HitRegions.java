@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+/**
+ * Index of the tappable areas on the face, kept up to date from the {@link FaceLayout} so a tap
+ * can be resolved without measuring anything.
+ */
+public final class HitRegions {
+
+    public static final int NONE = -1;
+    public static final int TIME = 0;
+    public static final int DATE = 1;
+    public static final int BATTERY = 2;
+    private static final int COUNT = 3;
+
+    private final int[] mLeft = new int[COUNT];
+    private final int[] mTop = new int[COUNT];
+    private final int[] mRight = new int[COUNT];
+    private final int[] mBottom = new int[COUNT];
+
+    /**
+     * Updates the regions to match the text positions in the layout.
+     */
+    public void update(FaceLayout layout) {
+        set(TIME, layout.getTimeX(), layout.getTimeY(), layout.getTimeWidth(), layout.getTimeHeight());
+        set(DATE, layout.getDateX(), layout.getDateY(), layout.getDateWidth(), layout.getDateHeight());
+        set(BATTERY, layout.getBatteryX(), layout.getBatteryY(), layout.getBatteryWidth(),
+                layout.getBatteryHeight());
+    }
+
+    /**
+     * Returns the region containing the point, or {@link #NONE}. Points on the edge of a region
+     * don't count as inside it.
+     */
+    public int find(int x, int y) {
+        for (int region = 0; region < COUNT; region++) {
+            if (x > mLeft[region] && x < mRight[region] && y > mTop[region] && y < mBottom[region]) {
+                return region;
+            }
+        }
+        return NONE;
+    }
+
+    private void set(int region, float x, float baseline, float width, int height) {
+        mLeft[region] = (int) x;
+        mRight[region] = (int) (x + width);
+        mTop[region] = (int) (baseline - height);
+        mBottom[region] = (int) baseline;
+    }
+}
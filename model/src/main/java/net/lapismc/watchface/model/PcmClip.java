@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+/**
+ * A decoded clip of 16 bit PCM, interleaved when there is more than one channel.
+ */
+public final class PcmClip {
+
+    public final short[] samples;
+    public final int sampleCount;
+    public final int sampleRate;
+    public final int channelCount;
+
+    public PcmClip(short[] samples, int sampleCount, int sampleRate, int channelCount) {
+        this.samples = samples;
+        this.sampleCount = sampleCount;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    public long getByteCount() {
+        return sampleCount * 2L;
+    }
+}
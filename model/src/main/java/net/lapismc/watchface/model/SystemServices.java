@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+/**
+ * The system services the face's schedule calls into. On a watch every call is a binder call
+ * to another process, so keeping them behind this lets the schedule be replayed without one and
+ * the calls counted.
+ */
+public interface SystemServices {
+
+    /**
+     * Sets the chime alarm to go off at the given wall clock time, replacing any pending one.
+     */
+    void setChimeAlarm(long timeMs);
+
+    /**
+     * Vibrates the given hour of the 12 hour clock.
+     */
+    void vibrateHour(int hour);
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the face's periodic and one off tasks on a single wall clock timeline, so they can all
+ * be served by one wakeup. There are only ever a handful of tasks, so each task id has a fixed
+ * slot and finding the next deadline is a scan rather than a sorted structure.
+ * <p>
+ * Task ids are small integers below the capacity, and due tasks are returned as a bit mask.
+ */
+public final class TaskTimeline {
+
+    public static final long NONE = Long.MAX_VALUE;
+
+    private final long[] mDeadlines;
+    private final long[] mPeriods;
+
+    public TaskTimeline(int capacity) {
+        if (capacity > Integer.SIZE) {
+            throw new IllegalArgumentException("At most " + Integer.SIZE + " tasks are supported");
+        }
+        mDeadlines = new long[capacity];
+        mPeriods = new long[capacity];
+        Arrays.fill(mDeadlines, NONE);
+    }
+
+    /**
+     * Schedules a task, replacing any existing deadline for it.
+     *
+     * @param period how often the task repeats after the deadline, or 0 to run it once
+     */
+    public void schedule(int task, long deadline, long period) {
+        mDeadlines[task] = deadline;
+        mPeriods[task] = period;
+    }
+
+    public void cancel(int task) {
+        mDeadlines[task] = NONE;
+        mPeriods[task] = 0;
+    }
+
+    /**
+     * Returns the earliest deadline of any task, or {@link #NONE} if nothing is scheduled.
+     */
+    public long nextDeadline() {
+        long next = NONE;
+        for (long deadline : mDeadlines) {
+            if (deadline < next) {
+                next = deadline;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns the tasks that are due by the given time, moving repeating tasks on to their next
+     * deadline and clearing one off tasks. Tasks due within the slack are run early so they share
+     * this wakeup instead of needing one of their own.
+     */
+    public int collectDue(long now, long slack) {
+        int due = 0;
+        long limit = now + slack;
+        for (int task = 0; task < mDeadlines.length; task++) {
+            long deadline = mDeadlines[task];
+            if (deadline == NONE || deadline > limit) {
+                continue;
+            }
+            due |= 1 << task;
+            long period = mPeriods[task];
+            if (period > 0) {
+                //Skip any deadlines that were missed, keeping the task on its original phase
+                long missed = (now - deadline) / period;
+                mDeadlines[task] = deadline + (Math.max(missed, 0) + 1) * period;
+            } else {
+                mDeadlines[task] = NONE;
+            }
+        }
+        return due;
+    }
+
+    public static boolean isDue(int dueTasks, int task) {
+        return (dueTasks & (1 << task)) != 0;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+import java.util.Calendar;
+
+/**
+ * Fixed capacity character buffer that the engine formats its text into, so that drawing the
+ * time, date and battery level never has to allocate a new String.
+ */
+public final class TextBuffer {
+
+    private static final String[] DAY_NAMES =
+            {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String[] MONTH_NAMES =
+            {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private final char[] mChars;
+    private int mLength;
+
+    public TextBuffer(int capacity) {
+        mChars = new char[capacity];
+    }
+
+    public char[] chars() {
+        return mChars;
+    }
+
+    public int length() {
+        return mLength;
+    }
+
+    public void clear() {
+        mLength = 0;
+    }
+
+    public TextBuffer append(char c) {
+        mChars[mLength++] = c;
+        return this;
+    }
+
+    public TextBuffer append(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            mChars[mLength++] = s.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a non negative number, zero padded to two digits.
+     */
+    public TextBuffer appendTwoDigits(int value) {
+        mChars[mLength++] = (char) ('0' + (value / 10) % 10);
+        mChars[mLength++] = (char) ('0' + value % 10);
+        return this;
+    }
+
+    /**
+     * Appends a number without any padding.
+     */
+    public TextBuffer appendInt(int value) {
+        if (value < 0) {
+            mChars[mLength++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = mLength + digits - 1; i >= mLength; i--) {
+            mChars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        mLength += digits;
+        return this;
+    }
+
+    public boolean contentEquals(TextBuffer other) {
+        if (mLength != other.mLength) {
+            return false;
+        }
+        for (int i = 0; i < mLength; i++) {
+            if (mChars[i] != other.mChars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void set(TextBuffer other) {
+        System.arraycopy(other.mChars, 0, mChars, 0, other.mLength);
+        mLength = other.mLength;
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+
+    /**
+     * Formats the time the same way as the "hh:mm" date pattern.
+     */
+    public void formatTime(Calendar calendar) {
+        int hour = calendar.get(Calendar.HOUR);
+        if (hour == 0) hour = 12;
+        clear();
+        appendTwoDigits(hour).append(':').appendTwoDigits(calendar.get(Calendar.MINUTE));
+    }
+
+    /**
+     * Formats the date the same way as the "EE dd MMM" date pattern.
+     */
+    public void formatCleanDate(Calendar calendar) {
+        clear();
+        append(DAY_NAMES[calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY]).append(' ')
+                .appendTwoDigits(calendar.get(Calendar.DAY_OF_MONTH)).append(' ')
+                .append(MONTH_NAMES[calendar.get(Calendar.MONTH)]);
+    }
+
+    /**
+     * Formats the date the same way as the "dd/MM/yyyy" date pattern.
+     */
+    public void formatStandardDate(Calendar calendar) {
+        clear();
+        appendTwoDigits(calendar.get(Calendar.DAY_OF_MONTH)).append('/')
+                .appendTwoDigits(calendar.get(Calendar.MONTH) + 1).append('/')
+                .appendInt(calendar.get(Calendar.YEAR));
+    }
+
+    /**
+     * Formats a battery level as a percentage, or nothing if the level is not known.
+     */
+    public void formatPercent(int level) {
+        clear();
+        if (level >= 0) {
+            appendInt(level).append('%');
+        }
+    }
+}
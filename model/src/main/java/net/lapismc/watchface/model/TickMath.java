@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+import java.util.Calendar;
+
+/**
+ * Timing calculations for the interactive update tick and the hourly chime.
+ */
+public final class TickMath {
+
+    private TickMath() {
+    }
+
+    /**
+     * Returns how long to wait from the given time so the next tick lands exactly on a
+     * multiple of the period.
+     */
+    public static long delayToNextTick(long now, long periodMs) {
+        return periodMs - (now % periodMs);
+    }
+
+    /**
+     * Returns when the next tick after the given time is due.
+     */
+    public static long nextTickTime(long now, long periodMs) {
+        return now + delayToNextTick(now, periodMs);
+    }
+
+    /**
+     * Returns the start of the next hour after the given time, in the calendar's time zone.
+     * The calendar is used as scratch space.
+     */
+    public static long nextHourBoundary(Calendar calendar, long now) {
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.HOUR_OF_DAY, 1);
+        return calendar.getTimeInMillis();
+    }
+}
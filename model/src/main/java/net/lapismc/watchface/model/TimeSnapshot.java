@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * The time as shown on the face. The calendar fields and the time and date text are only worked
+ * out when a new minute starts (the date text only when the day changes), within a minute the
+ * seconds are found by subtracting the start of the minute.
+ */
+public final class TimeSnapshot {
+
+    private static final long MINUTE_MS = 60000;
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final TextBuffer mTimeText = new TextBuffer(8);
+    private final TextBuffer mCleanDateText = new TextBuffer(16);
+    private final TextBuffer mStandardDateText = new TextBuffer(16);
+
+    /* Wall clock span of the current minute, both Long.MIN_VALUE to force a recompute. */
+    private long mMinuteStart = Long.MIN_VALUE;
+    private long mMinuteEnd = Long.MIN_VALUE;
+    private long mMillisOfMinute;
+    private int mHour;
+    private int mMinute;
+    private int mDayKey = -1;
+
+    /**
+     * Moves the snapshot to the given time, returning true if this started a new minute and so
+     * the text has changed.
+     */
+    public boolean update(long now) {
+        if (now >= mMinuteStart && now < mMinuteEnd) {
+            mMillisOfMinute = now - mMinuteStart;
+            return false;
+        }
+        mCalendar.setTimeInMillis(now);
+        mMillisOfMinute = mCalendar.get(Calendar.SECOND) * 1000L + mCalendar.get(Calendar.MILLISECOND);
+        mMinuteStart = now - mMillisOfMinute;
+        mMinuteEnd = mMinuteStart + MINUTE_MS;
+        mHour = mCalendar.get(Calendar.HOUR_OF_DAY);
+        mMinute = mCalendar.get(Calendar.MINUTE);
+        mTimeText.formatTime(mCalendar);
+
+        int dayKey = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (dayKey != mDayKey) {
+            mDayKey = dayKey;
+            mCleanDateText.formatCleanDate(mCalendar);
+            mStandardDateText.formatStandardDate(mCalendar);
+        }
+        return true;
+    }
+
+    /**
+     * Changes the time zone, the text is worked out again on the next update.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        invalidate();
+    }
+
+    public void invalidate() {
+        mMinuteStart = Long.MIN_VALUE;
+        mMinuteEnd = Long.MIN_VALUE;
+        mDayKey = -1;
+    }
+
+    public long getMinuteStart() {
+        return mMinuteStart;
+    }
+
+    public int getHourOfDay() {
+        return mHour;
+    }
+
+    public int getMinute() {
+        return mMinute;
+    }
+
+    /**
+     * Returns the seconds into the current minute, including the fraction of a second.
+     */
+    public float getSeconds() {
+        return mMillisOfMinute / 1000f;
+    }
+
+    public TextBuffer getTimeText() {
+        return mTimeText;
+    }
+
+    public TextBuffer getDateText(boolean clean) {
+        return clean ? mCleanDateText : mStandardDateText;
+    }
+}
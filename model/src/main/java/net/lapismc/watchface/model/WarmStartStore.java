@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.lapismc.watchface.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Saves what an engine has worked out, so the next engine can draw its first frame without
+ * measuring anything or guessing the user's settings. Only settings and text sizes are kept,
+ * the next engine draws everything itself. Nothing is restored from a file that was written by
+ * another version of the format or is damaged.
+ * <p>
+ * The file is a magic number, the format version, the payload length, the payload and then a
+ * CRC32 of the payload.
+ */
+public final class WarmStartStore {
+
+    private static final int MAGIC = 0x57465753;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 12;
+    private static final int CHECKSUM_BYTES = 8;
+    private static final String FILE_NAME = "warm_start.bin";
+
+    /**
+     * Everything saved for the next engine.
+     */
+    public static final class State {
+        /* Text sizes are scaled by this, nothing is restored if the scale has changed. */
+        public float textScale;
+        public boolean silent;
+        public int offsetStep;
+        public int batteryLevel;
+        public String timeZoneId;
+
+        /* The last text drawn, with the sizes measured for it and the paints that measured it. */
+        public boolean hasSizes;
+        /* Whether the sizes were measured with the face's own fonts rather than the system font. */
+        public boolean styled;
+        public int mode;
+        public boolean lowBattery;
+        public final TextBuffer timeText = new TextBuffer(32);
+        public final TextBuffer dateText = new TextBuffer(32);
+        public final TextBuffer batteryText = new TextBuffer(32);
+        public float timeWidth, dateWidth, batteryWidth;
+        public int timeHeight, dateHeight, batteryHeight;
+    }
+
+    private final File mFile;
+    private final File mTempFile;
+
+    public WarmStartStore(File directory) {
+        mFile = new File(directory, FILE_NAME);
+        mTempFile = new File(directory, FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Reads the saved state, returning null if there isn't any that can be trusted.
+     */
+    public State load() {
+        if (!mFile.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[(int) mFile.length()];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+                in.readFully(bytes);
+            }
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (bytes.length < HEADER_BYTES + CHECKSUM_BYTES || header.readInt() != MAGIC
+                    || header.readInt() != VERSION) {
+                return discard();
+            }
+            int length = header.readInt();
+            if (length != bytes.length - HEADER_BYTES - CHECKSUM_BYTES) {
+                return discard();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, HEADER_BYTES, length);
+            header.skipBytes(length);
+            if (header.readLong() != crc.getValue()) {
+                return discard();
+            }
+            return read(new DataInputStream(new ByteArrayInputStream(bytes, HEADER_BYTES, length)));
+        } catch (IOException | RuntimeException e) {
+            return discard();
+        }
+    }
+
+    /**
+     * Writes the state, replacing what was saved before only once it has been fully written.
+     */
+    public synchronized void save(State state) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+            write(new DataOutputStream(payload), state);
+            CRC32 crc = new CRC32();
+            byte[] bytes = payload.toByteArray();
+            crc.update(bytes, 0, bytes.length);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(mTempFile))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeLong(crc.getValue());
+            }
+            if (!mTempFile.renameTo(mFile)) {
+                mTempFile.delete();
+            }
+        } catch (IOException e) {
+            mTempFile.delete();
+        }
+    }
+
+    private State discard() {
+        mFile.delete();
+        return null;
+    }
+
+    private static void write(DataOutputStream out, State state) throws IOException {
+        out.writeFloat(state.textScale);
+        out.writeBoolean(state.silent);
+        out.writeInt(state.offsetStep);
+        out.writeInt(state.batteryLevel);
+        out.writeUTF(state.timeZoneId);
+        out.writeBoolean(state.hasSizes);
+        if (!state.hasSizes) {
+            return;
+        }
+        out.writeBoolean(state.styled);
+        out.writeInt(state.mode);
+        out.writeBoolean(state.lowBattery);
+        writeText(out, state.timeText, state.timeWidth, state.timeHeight);
+        writeText(out, state.dateText, state.dateWidth, state.dateHeight);
+        writeText(out, state.batteryText, state.batteryWidth, state.batteryHeight);
+    }
+
+    private static State read(DataInputStream in) throws IOException {
+        State state = new State();
+        state.textScale = in.readFloat();
+        state.silent = in.readBoolean();
+        state.offsetStep = in.readInt();
+        state.batteryLevel = in.readInt();
+        state.timeZoneId = in.readUTF();
+        state.hasSizes = in.readBoolean();
+        if (!state.hasSizes) {
+            return state;
+        }
+        state.styled = in.readBoolean();
+        state.mode = in.readInt();
+        state.lowBattery = in.readBoolean();
+        state.timeWidth = readText(in, state.timeText);
+        state.timeHeight = in.readInt();
+        state.dateWidth = readText(in, state.dateText);
+        state.dateHeight = in.readInt();
+        state.batteryWidth = readText(in, state.batteryText);
+        state.batteryHeight = in.readInt();
+        return state;
+    }
+
+    private static void writeText(DataOutputStream out, TextBuffer text, float width, int height)
+            throws IOException {
+        out.writeUTF(text.toString());
+        out.writeFloat(width);
+        out.writeInt(height);
+    }
+
+    /**
+     * Reads text into the buffer, returning the width saved with it. The height follows.
+     */
+    private static float readText(DataInputStream in, TextBuffer text) throws IOException {
+        text.clear();
+        text.append(in.readUTF());
+        return in.readFloat();
+    }
+}
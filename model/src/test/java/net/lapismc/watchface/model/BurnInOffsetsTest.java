@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BurnInOffsetsTest {
+
+    /* The variance the face uses. */
+    private static final int VARIANCE = 30;
+    private static final int SIDE = VARIANCE * 2 - 1;
+    private static final int PATH_LENGTH = SIDE * SIDE;
+
+    @Test
+    public void startsUnshifted() {
+        BurnInOffsets offsets = new BurnInOffsets(VARIANCE);
+        assertEquals(-1, offsets.getStep());
+        assertEquals(0, offsets.getX());
+        assertEquals(0, offsets.getY());
+    }
+
+    @Test
+    public void visitsEveryOffsetOnceBeforeRepeating() {
+        BurnInOffsets offsets = new BurnInOffsets(VARIANCE);
+        boolean[] seen = new boolean[PATH_LENGTH];
+        for (int step = 0; step < PATH_LENGTH; step++) {
+            offsets.next();
+            int x = offsets.getX();
+            int y = offsets.getY();
+            assertTrue("x " + x, Math.abs(x) < VARIANCE);
+            assertTrue("y " + y, Math.abs(y) < VARIANCE);
+            int index = (y + VARIANCE - 1) * SIDE + x + VARIANCE - 1;
+            assertFalse("Visited " + x + "," + y + " twice", seen[index]);
+            seen[index] = true;
+        }
+        //Every slot is now seen, so the path starts again from the beginning
+        offsets.next();
+        assertEquals(0, offsets.getStep());
+    }
+
+    @Test
+    public void neverStepsToANeighbouringOffset() {
+        BurnInOffsets offsets = new BurnInOffsets(VARIANCE);
+        offsets.next();
+        for (int step = 0; step < PATH_LENGTH; step++) {
+            int x = offsets.getX();
+            int y = offsets.getY();
+            offsets.next();
+            int distance = Math.max(Math.abs(offsets.getX() - x), Math.abs(offsets.getY() - y));
+            assertTrue("Step " + step + " only moved " + distance, distance > 1);
+        }
+    }
+
+    @Test
+    public void carriesOnFromASavedStep() {
+        BurnInOffsets offsets = new BurnInOffsets(VARIANCE);
+        for (int step = 0; step < 100; step++) {
+            offsets.next();
+        }
+        BurnInOffsets restored = new BurnInOffsets(VARIANCE);
+        restored.setStep(offsets.getStep());
+        assertEquals(offsets.getX(), restored.getX());
+        assertEquals(offsets.getY(), restored.getY());
+        offsets.next();
+        restored.next();
+        assertEquals(offsets.getStep(), restored.getStep());
+        assertEquals(offsets.getX(), restored.getX());
+        assertEquals(offsets.getY(), restored.getY());
+    }
+
+    @Test
+    public void wrapsStepsPastTheEndAndResetsNegativeOnes() {
+        BurnInOffsets offsets = new BurnInOffsets(VARIANCE);
+        offsets.setStep(PATH_LENGTH + 5);
+        assertEquals(5, offsets.getStep());
+        offsets.setStep(-1);
+        assertEquals(-1, offsets.getStep());
+        assertEquals(0, offsets.getX());
+        assertEquals(0, offsets.getY());
+    }
+
+    @Test
+    public void aVarianceOfOneNeverMoves() {
+        BurnInOffsets offsets = new BurnInOffsets(1);
+        for (int step = 0; step < 3; step++) {
+            offsets.next();
+            assertEquals(0, offsets.getX());
+            assertEquals(0, offsets.getY());
+        }
+    }
+}
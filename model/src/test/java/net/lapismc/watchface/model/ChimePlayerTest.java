@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the chime's start latency and resident footprint against a fake audio sink.
+ */
+public class ChimePlayerTest {
+
+    /* The same shape as beep.mp3 once decoded: 1.6 seconds of 48kHz stereo. */
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int SAMPLES = SAMPLE_RATE * CHANNELS * 16 / 10;
+
+    /* Starting a prepared clip should be nothing more than a call into the sink. */
+    private static final long START_BUDGET_NANOS = 1000000;
+    /* The decoded clip, plus the sink's copy of it while the face is visible. */
+    private static final long VISIBLE_BUDGET_BYTES = 2L * SAMPLES * 2;
+    private static final long HIDDEN_BUDGET_BYTES = SAMPLES * 2L;
+
+    private int mDecodes;
+    private boolean mFailDecode;
+    private final PcmDecoder mDecoder = new PcmDecoder() {
+        @Override
+        public PcmClip decode() {
+            mDecodes++;
+            if (mFailDecode) {
+                return null;
+            }
+            short[] samples = new short[SAMPLES];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) (Math.sin(i * 0.05) * Short.MAX_VALUE);
+            }
+            return new PcmClip(samples, samples.length, SAMPLE_RATE, CHANNELS);
+        }
+    };
+    private FakeChimeSink mSink;
+    private ChimePlayer mPlayer;
+
+    @Before
+    public void setUp() {
+        mSink = new FakeChimeSink();
+        mPlayer = new ChimePlayer(mDecoder, mSink);
+    }
+
+    @Test
+    public void preparedStartIsWithinBudget() {
+        mPlayer.prepare();
+        long[] latencies = new long[2000];
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            mPlayer.play(0.1f);
+            latencies[i] = mSink.lastPlayNanos - start;
+        }
+        Arrays.sort(latencies);
+        long p99 = latencies[latencies.length * 99 / 100];
+        assertTrue("p99 start latency " + p99 + "ns", p99 <= START_BUDGET_NANOS);
+        assertEquals(0.1f, mSink.lastVolume, 0f);
+        //Playing never decodes or opens the sink again
+        assertEquals(1, mDecodes);
+        assertEquals(1, mSink.opens);
+        assertEquals(latencies.length, mSink.plays);
+    }
+
+    @Test
+    public void footprintIsWithinBudget() {
+        assertEquals(0, mPlayer.getResidentBytes());
+        for (int day = 0; day < 10; day++) {
+            mPlayer.prepare();
+            long visible = mPlayer.getResidentBytes();
+            assertEquals(SAMPLES * 2L + mSink.getHeldBytes(), visible);
+            assertTrue(visible + " bytes while visible", visible <= VISIBLE_BUDGET_BYTES);
+
+            mPlayer.release();
+            long hidden = mPlayer.getResidentBytes();
+            assertEquals(0, mSink.getHeldBytes());
+            assertTrue(hidden + " bytes while hidden", hidden <= HIDDEN_BUDGET_BYTES);
+        }
+        //The clip is decoded once and kept, only the sink is opened each time
+        assertEquals(1, mDecodes);
+        assertEquals(10, mSink.opens);
+        assertEquals(10, mSink.closes);
+    }
+
+    @Test
+    public void playWithoutPrepareOpensTheSink() {
+        mPlayer.play(1f);
+        assertEquals(1, mSink.plays);
+        mPlayer.release();
+        mPlayer.play(1f);
+        assertEquals(2, mSink.opens);
+        assertEquals(2, mSink.plays);
+    }
+
+    @Test
+    public void failedDecodeIsRetried() {
+        mFailDecode = true;
+        mPlayer.play(1f);
+        assertEquals(0, mSink.plays);
+        assertEquals(0, mPlayer.getResidentBytes());
+
+        mFailDecode = false;
+        mPlayer.play(1f);
+        assertEquals(2, mDecodes);
+        assertEquals(1, mSink.plays);
+    }
+
+    @Test
+    public void failedOpenPlaysNothing() {
+        mSink.failOpen = true;
+        mPlayer.play(1f);
+        assertEquals(0, mSink.plays);
+        assertEquals(HIDDEN_BUDGET_BYTES, mPlayer.getResidentBytes());
+        //Releasing a sink that never opened doesn't close it
+        mPlayer.release();
+        assertEquals(0, mSink.closes);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommandQueueTest {
+
+    private static final int COMMANDS = 4;
+
+    /**
+     * Keeps everything handed over, as "command=value".
+     */
+    private static final class Recorder implements CommandQueue.Consumer {
+        final List<String> received = new ArrayList<>();
+        final List<Object> objects = new ArrayList<>();
+
+        @Override
+        public void onCommand(int command, long value, Object object, long postedNanos) {
+            received.add(command + "=" + value);
+            objects.add(object);
+        }
+    }
+
+    @Test
+    public void handsCommandsOverInOrder() {
+        CommandQueue queue = new CommandQueue(8, COMMANDS);
+        Recorder recorder = new Recorder();
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.post(2, 20, null, 0));
+        assertTrue(queue.post(0, 1, null, 0));
+        assertTrue(queue.post(2, 21, null, 0));
+        assertFalse(queue.isEmpty());
+        assertEquals(3, queue.drain(recorder));
+        assertEquals("[2=20, 0=1, 2=21]", recorder.received.toString());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.drain(recorder));
+    }
+
+    @Test
+    public void coalescesOnceTheRingIsFull() {
+        CommandQueue queue = new CommandQueue(2, COMMANDS);
+        Recorder recorder = new Recorder();
+        assertTrue(queue.post(1, 10, null, 0));
+        assertTrue(queue.post(3, 30, null, 0));
+        assertFalse(queue.post(3, 31, null, 0));
+        assertFalse(queue.post(0, 1, null, 0));
+        assertFalse(queue.post(3, 32, null, 0));
+        //The ring comes first, then the latest of each coalesced command in command order
+        assertEquals(4, queue.drain(recorder));
+        assertEquals("[1=10, 3=30, 0=1, 3=32]", recorder.received.toString());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void keepsCoalescingUntilDrainedEvenWithRoom() {
+        final CommandQueue queue = new CommandQueue(2, COMMANDS);
+        final Recorder recorder = new Recorder();
+        queue.post(1, 10, null, 0);
+        queue.post(1, 11, null, 0);
+        assertFalse(queue.post(1, 12, null, 0));
+        queue.drain(new CommandQueue.Consumer() {
+            @Override
+            public void onCommand(int command, long value, Object object, long postedNanos) {
+                //The ring has room again, but this must not overtake the coalesced 12
+                if (value == 10) {
+                    assertFalse(queue.post(1, 13, null, 0));
+                }
+                recorder.onCommand(command, value, object, postedNanos);
+            }
+        });
+        assertEquals("[1=10, 1=11, 1=13]", recorder.received.toString());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.post(1, 14, null, 0));
+    }
+
+    @Test
+    public void handsOverObjectsAndLetsGoOfThem() {
+        CommandQueue queue = new CommandQueue(2, COMMANDS);
+        Recorder recorder = new Recorder();
+        Object first = new Object();
+        Object latest = new Object();
+        queue.post(2, 0, first, 0);
+        queue.post(0, 0, null, 0);
+        queue.post(2, 0, new Object(), 0);
+        queue.post(2, 0, latest, 0);
+        queue.drain(recorder);
+        assertSame(first, recorder.objects.get(0));
+        assertNull(recorder.objects.get(1));
+        assertSame(latest, recorder.objects.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsACapacityThatIsNotAPowerOfTwo() {
+        new CommandQueue(6, COMMANDS);
+    }
+
+    /**
+     * Posts a rising value for each command from one thread while another drains, checking that
+     * every command only ever moves forwards and ends on the last value posted.
+     */
+    @Test(timeout = 30000)
+    public void neverReordersACommandAcrossThreads() throws Exception {
+        final int posts = 2_000_000;
+        final CommandQueue queue = new CommandQueue(4, COMMANDS);
+        final long[] last = new long[COMMANDS];
+        Arrays.fill(last, -1);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final long[] coalesced = new long[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < posts; i++) {
+                    if (!queue.post(i % COMMANDS, i, null, 0)) {
+                        coalesced[0]++;
+                    }
+                }
+            }
+        });
+        CommandQueue.Consumer consumer = new CommandQueue.Consumer() {
+            @Override
+            public void onCommand(int command, long value, Object object, long postedNanos) {
+                if (value <= last[command] && failure.get() == null) {
+                    failure.set("Command " + command + " went from " + last[command] + " to " + value);
+                }
+                last[command] = value;
+            }
+        };
+        producer.start();
+        long handed = 0;
+        while (producer.isAlive()) {
+            handed += queue.drain(consumer);
+        }
+        producer.join();
+        handed += queue.drain(consumer);
+
+        assertNull(failure.get(), failure.get());
+        assertTrue(queue.isEmpty());
+        for (int command = 0; command < COMMANDS; command++) {
+            assertEquals(posts - COMMANDS + command, last[command]);
+        }
+        assertTrue("Handed over " + handed, handed <= posts);
+        assertTrue("Nothing was coalesced", coalesced[0] > 0);
+    }
+}
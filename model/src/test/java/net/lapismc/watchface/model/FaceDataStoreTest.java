@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FaceDataStoreTest {
+
+    private int mNotifications;
+    private final FaceDataStore mStore = new FaceDataStore(FaceData.EMPTY, new FaceDataStore.Listener() {
+        @Override
+        public void onDataPending() {
+            mNotifications++;
+        }
+    });
+    private final FakeDataProvider mProvider = new FakeDataProvider(mStore);
+
+    @Test
+    public void publishingBuildsTheNextSnapshot() {
+        mProvider.battery(80);
+        mProvider.timeZone("Australia/Adelaide");
+        FaceData data = mStore.getLatest();
+        assertEquals(2, data.sequence);
+        assertEquals(80, data.batteryLevel);
+        assertFalse(data.batteryLow);
+        assertEquals(TimeZone.getTimeZone("Australia/Adelaide"), data.timeZone);
+        mProvider.battery(30);
+        assertTrue(mStore.getLatest().batteryLow);
+        //The other fields are carried over
+        assertEquals(TimeZone.getTimeZone("Australia/Adelaide"), mStore.getLatest().timeZone);
+    }
+
+    @Test
+    public void unchangedDataIsNotPublished() {
+        mProvider.battery(80);
+        mStore.takePending();
+        FaceData data = mStore.getLatest();
+        mProvider.battery(80);
+        assertSame(data, mStore.getLatest());
+        assertEquals(1, mProvider.published);
+        assertEquals(1, mNotifications);
+    }
+
+    @Test
+    public void publishesAreCoalescedUntilTaken() {
+        mProvider.battery(80);
+        mProvider.battery(79);
+        mProvider.timeZone("Europe/London");
+        assertEquals(1, mNotifications);
+        //Whoever takes it gets everything published so far
+        FaceData data = mStore.takePending();
+        assertEquals(3, data.sequence);
+        assertEquals(79, data.batteryLevel);
+        mProvider.battery(78);
+        assertEquals(2, mNotifications);
+    }
+
+    @Test
+    public void ageIsMeasuredFromThePublish() {
+        assertEquals(-1, mStore.getLatest().ageNanos(mProvider.nowNanos()));
+        mProvider.advance(1000);
+        mProvider.battery(80);
+        long published = mProvider.nowNanos();
+        mProvider.advance(5000);
+        FaceData data = mStore.getLatest();
+        assertEquals(published, data.publishedNanos);
+        assertEquals(5000, data.ageNanos(mProvider.nowNanos()));
+        //Nothing new is published, so the same snapshot keeps getting older
+        mProvider.battery(80);
+        mProvider.advance(5000);
+        assertEquals(10000, mStore.getLatest().ageNanos(mProvider.nowNanos()));
+    }
+
+    @Test
+    public void restoredDataWasNeverPublished() {
+        FaceDataStore store = new FaceDataStore(new FaceData(55, null, 0, 0), new FaceDataStore.Listener() {
+            @Override
+            public void onDataPending() {
+            }
+        });
+        assertEquals(55, store.getLatest().batteryLevel);
+        assertNull(store.getLatest().timeZone);
+        assertEquals(-1, store.getLatest().ageNanos(System.nanoTime()));
+    }
+
+    @Test
+    public void concurrentPublishesAreNeverLost() throws InterruptedException {
+        FaceDataStore store = new FaceDataStore(FaceData.EMPTY, new FaceDataStore.Listener() {
+            @Override
+            public void onDataPending() {
+            }
+        });
+        FakeDataProvider battery = new FakeDataProvider(store);
+        FakeDataProvider timeZone = new FakeDataProvider(store);
+        Thread batteryThread = new Thread(battery.batteryRamp(100000));
+        Thread timeZoneThread = new Thread(timeZone.timeZoneFlips(100000));
+        batteryThread.start();
+        timeZoneThread.start();
+        batteryThread.join();
+        timeZoneThread.join();
+        FaceData data = store.getLatest();
+        //Every publish got its own sequence number, and neither overwrote the other's field
+        assertEquals(battery.published + timeZone.published, data.sequence);
+        assertEquals(100000, battery.published);
+        assertEquals(100000, data.batteryLevel);
+        assertEquals(TimeZone.getTimeZone("Europe/London"), data.timeZone);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+/**
+ * Stands in for the audio track. It keeps a copy of the clip while open, as a static track
+ * does, and records when playback was started.
+ */
+final class FakeChimeSink implements ChimeSink {
+
+    boolean failOpen;
+    int opens;
+    int plays;
+    int closes;
+    long lastPlayNanos;
+    float lastVolume;
+    private short[] mCopy;
+
+    @Override
+    public boolean open(PcmClip clip) {
+        if (mCopy != null) {
+            throw new IllegalStateException("Opened twice");
+        }
+        if (failOpen) {
+            return false;
+        }
+        opens++;
+        mCopy = new short[clip.sampleCount];
+        System.arraycopy(clip.samples, 0, mCopy, 0, clip.sampleCount);
+        return true;
+    }
+
+    @Override
+    public void play(float volume) {
+        if (mCopy == null) {
+            throw new IllegalStateException("Played while closed");
+        }
+        lastPlayNanos = System.nanoTime();
+        lastVolume = volume;
+        plays++;
+    }
+
+    @Override
+    public void close() {
+        closes++;
+        mCopy = null;
+    }
+
+    long getHeldBytes() {
+        return mCopy == null ? 0 : mCopy.length * 2L;
+    }
+}
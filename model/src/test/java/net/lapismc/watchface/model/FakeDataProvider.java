@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import java.util.TimeZone;
+
+/**
+ * Stands in for the face's data providers, publishing into a store on a clock of its own. Like
+ * the real providers it can be run on a thread of its own.
+ */
+final class FakeDataProvider {
+
+    private final FaceDataStore mStore;
+    private long mNanos = 1;
+    int published;
+
+    FakeDataProvider(FaceDataStore store) {
+        mStore = store;
+    }
+
+    void advance(long nanos) {
+        mNanos += nanos;
+    }
+
+    long nowNanos() {
+        return mNanos;
+    }
+
+    void battery(int level) {
+        if (mStore.publishBattery(level, mNanos)) {
+            published++;
+        }
+    }
+
+    void timeZone(String id) {
+        if (mStore.publishTimeZone(TimeZone.getTimeZone(id), mNanos)) {
+            published++;
+        }
+    }
+
+    /**
+     * Returns a task that publishes every battery level from 1 to the given one in turn.
+     */
+    Runnable batteryRamp(final int to) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (int level = 1; level <= to; level++) {
+                    battery(level);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a task that switches between two time zones the given number of times.
+     */
+    Runnable timeZoneFlips(final int times) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < times; i++) {
+                    timeZone(i % 2 == 0 ? "Australia/Adelaide" : "Europe/London");
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the bytes allocated by the model's share of each frame over thousands of simulated
+ * frames, interactive and ambient, including the minute rebuilds and burn in steps. Both runs
+ * count a pass centred on Adelaide's October 2020 daylight saving change, so each crosses local
+ * midnight and the change.
+ */
+public class FrameAllocationTest {
+
+    /* 2020-10-04T02:00 in Adelaide, when the clocks went forward to 03:00. */
+    private static final long DST_START = 1601742600000L;
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+    private static final int FRAMES = 20000;
+    /*
+     * Room for the JIT, which can put an object it had optimised away back on the heap when it
+     * deoptimises. Anything allocated once a minute or more often is well over this.
+     */
+    private static final long NOISE_BYTES = 1024;
+    private static final TimeZone ADELAIDE = TimeZone.getTimeZone("Australia/Adelaide");
+
+    private final TimeSnapshot mTime = new TimeSnapshot();
+    private final FaceLayout mLayout = new FaceLayout();
+    private final HitRegions mHitRegions = new HitRegions();
+    private final TextBuffer mBattery = new TextBuffer(8);
+    private final BurnInOffsets mOffsets = new BurnInOffsets(30);
+    private com.sun.management.ThreadMXBean mThreads;
+    private long mNow;
+    private float mSink;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+        mTime.setTimeZone(ADELAIDE);
+    }
+
+    @Test
+    public void interactiveFramesDoNotAllocate() {
+        start(SECOND_MS);
+        //The first pass loads classes and fills caches, only the second one is counted
+        runFrames(SECOND_MS);
+        long allocated = countAllocations(SECOND_MS);
+        assertTrue(allocated + " bytes allocated over " + FRAMES + " interactive frames",
+                allocated <= NOISE_BYTES);
+    }
+
+    @Test
+    public void ambientFramesDoNotAllocate() {
+        start(MINUTE_MS);
+        runFrames(MINUTE_MS);
+        long allocated = countAllocations(MINUTE_MS);
+        assertTrue(allocated + " bytes allocated over " + FRAMES + " ambient frames",
+                allocated <= NOISE_BYTES);
+    }
+
+    /**
+     * Sets the clock so that the second, counted, pass has the daylight saving change halfway
+     * through it.
+     */
+    private void start(long frameMs) {
+        mNow = DST_START - FRAMES * frameMs * 3 / 2;
+    }
+
+    private long countAllocations(long frameMs) {
+        long threadId = Thread.currentThread().getId();
+        long from = mNow;
+        long before = mThreads.getThreadAllocatedBytes(threadId);
+        runFrames(frameMs);
+        long after = mThreads.getThreadAllocatedBytes(threadId);
+        assertTrue("The counted pass missed the daylight saving change",
+                ADELAIDE.getOffset(from) != ADELAIDE.getOffset(mNow));
+        return after - before;
+    }
+
+    /**
+     * Does what the engine asks of the model for each frame: move the time on, rebuild the text
+     * and layout when the minute changes, and step the burn in offset every 30 seconds.
+     */
+    private void runFrames(long frameMs) {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            mNow += frameMs;
+            if (mTime.update(mNow)) {
+                mBattery.formatPercent((int) ((mNow / MINUTE_MS) % 101));
+                mLayout.layout(257f, 257f,
+                        mTime.getTimeText().length() * 40f, 70,
+                        mTime.getDateText(frame % 2 == 0).length() * 10f, 16,
+                        mBattery.length() * 25f, 40);
+                mHitRegions.update(mLayout);
+            }
+            if (mNow % (30 * SECOND_MS) < frameMs) {
+                mOffsets.next();
+            }
+            mSink += mTime.getSeconds() * 6f + mOffsets.getX() + mOffsets.getY()
+                    + TickMath.delayToNextTick(mNow, frameMs) + mHitRegions.find(257, 257);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HitRegionsTest {
+
+    private final FaceLayout mLayout = new FaceLayout();
+    private final HitRegions mRegions = new HitRegions();
+
+    @Before
+    public void setUp() {
+        //Time spans 100-300 x 170-230, date 140-260 x 140-160 and battery 170-230 x 250-270
+        mLayout.layout(200, 200, 200, 60, 120, 20, 60, 20);
+        mRegions.update(mLayout);
+    }
+
+    @Test
+    public void findsNothingBeforeTheFirstUpdate() {
+        assertEquals(HitRegions.NONE, new HitRegions().find(0, 0));
+        assertEquals(HitRegions.NONE, new HitRegions().find(200, 200));
+    }
+
+    @Test
+    public void findsEachRegion() {
+        assertEquals(HitRegions.TIME, mRegions.find(200, 200));
+        assertEquals(HitRegions.DATE, mRegions.find(200, 150));
+        assertEquals(HitRegions.BATTERY, mRegions.find(200, 260));
+    }
+
+    @Test
+    public void edgesAreOutside() {
+        assertEquals(HitRegions.TIME, mRegions.find(101, 171));
+        assertEquals(HitRegions.NONE, mRegions.find(100, 200));
+        assertEquals(HitRegions.NONE, mRegions.find(300, 200));
+        assertEquals(HitRegions.NONE, mRegions.find(200, 170));
+        assertEquals(HitRegions.NONE, mRegions.find(200, 230));
+    }
+
+    @Test
+    public void gapsBetweenTheTextAreOutside() {
+        assertEquals(HitRegions.NONE, mRegions.find(200, 165));
+        assertEquals(HitRegions.NONE, mRegions.find(200, 240));
+        //Beside the date but above the time
+        assertEquals(HitRegions.NONE, mRegions.find(120, 150));
+        assertEquals(HitRegions.NONE, mRegions.find(200, 20));
+    }
+
+    @Test
+    public void followsTheLayoutWhenItChanges() {
+        mLayout.layout(100, 100, 200, 60, 120, 20, 60, 20);
+        mRegions.update(mLayout);
+        assertEquals(HitRegions.TIME, mRegions.find(100, 100));
+        assertEquals(HitRegions.NONE, mRegions.find(250, 200));
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a whole day through the engine's {@link FaceSchedule} on a manual clock, standing in
+ * for the handler, the ambient time tick and the chime alarm. Each hour the wrist is raised for
+ * five minutes with two taps on the time, once mid hour and once across the hour boundary, and
+ * wakeups arrive a little late with the odd long stall. The counters gathered are then held to
+ * what the face promises, so a change to the schedule that costs wakeups, draws or binder calls,
+ * or lets the chime or tick drift, fails here.
+ */
+public class SimulatedDayTest {
+
+    private static final TimeZone ADELAIDE = TimeZone.getTimeZone("Australia/Adelaide");
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long WINDOW_MS = 5 * MINUTE_MS;
+    /* How late the handler runs a wakeup, and how late the occasional stalled one is. */
+    private static final int LATENESS_MS = 20;
+    private static final long STALL_MS = 1500;
+    private static final int STALL_ONE_IN = 500;
+    private static final long ALARM_DELIVERY_MS = 50;
+    private static final long NONE = Long.MAX_VALUE;
+
+    /* Scripted events, run ahead of whatever else is due at the same time. */
+    private static final int EVENT_INTERACTIVE = 0;
+    private static final int EVENT_AMBIENT = 1;
+    private static final int EVENT_TAP = 2;
+
+    private final Random mRandom = new Random(42);
+    private ManualClock mClock;
+    private FaceSchedule mSchedule;
+    private long mDayStart;
+    private final List<long[]> mScript = new ArrayList<>();
+
+    /* What the fake handler, alarm and face are doing. */
+    private long mWakeupAt = NONE;
+    private long mWakeupDeadline;
+    private long mAlarmAt = NONE;
+    private long mNextMinuteTick = NONE;
+    private boolean mClean = true;
+    private long mTapTime;
+
+    /* The counters. */
+    private int mWakeups;
+    private int mIdleWakeups;
+    private int mOffPhaseWakeups;
+    private int mModeChanges;
+    private int mStalls;
+    private long mInjectedLateness;
+    private long mReportedLateness;
+    private int mRedraws;
+    private int mInteractiveSeconds;
+    private int mAmbientTicks;
+    private int mServiceCalls;
+    private long mLastBurnInStep;
+    private long mMaxBurnInGap;
+    private final List<Long> mAlarmTimes = new ArrayList<>();
+    private final List<Integer> mChimedHours = new ArrayList<>();
+    private final List<Long> mChimeDrift = new ArrayList<>();
+    private final List<Long> mRevertDelays = new ArrayList<>();
+
+    private final SystemServices mServices = new SystemServices() {
+        @Override
+        public void setChimeAlarm(long timeMs) {
+            mServiceCalls++;
+            mAlarmTimes.add(timeMs);
+            mAlarmAt = timeMs;
+        }
+
+        @Override
+        public void vibrateHour(int hour) {
+            mServiceCalls++;
+            mChimedHours.add(hour);
+        }
+    };
+
+    private final FaceSchedule.Host mHost = new FaceSchedule.Host() {
+        @Override
+        public void setWakeup(long delayMs) {
+            long now = mClock.currentTimeMillis();
+            mWakeupDeadline = now + delayMs;
+            long lateness = mRandom.nextInt(STALL_ONE_IN) == 0 ? STALL_MS : mRandom.nextInt(LATENESS_MS);
+            mWakeupAt = mWakeupDeadline + lateness;
+        }
+
+        @Override
+        public void cancelWakeup() {
+            mWakeupAt = NONE;
+        }
+
+        @Override
+        public void onBurnInStep() {
+            long now = mClock.currentTimeMillis();
+            mMaxBurnInGap = Math.max(mMaxBurnInGap, now - mLastBurnInStep);
+            mLastBurnInStep = now;
+        }
+
+        @Override
+        public void onDateFormatRevert() {
+            mClean = true;
+            mRevertDelays.add(mClock.currentTimeMillis() - mTapTime);
+        }
+
+        @Override
+        public void onChime(int hour) {
+            mChimeDrift.add(mClock.currentTimeMillis() - mAlarmTimes.get(mAlarmTimes.size() - 1));
+        }
+
+        @Override
+        public void redraw() {
+            mRedraws++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Calendar calendar = Calendar.getInstance(ADELAIDE);
+        calendar.clear();
+        //An ordinary day, without a daylight saving change
+        calendar.set(2021, Calendar.MARCH, 10);
+        mDayStart = calendar.getTimeInMillis();
+        for (int hour = 0; hour < 24; hour++) {
+            //Even hours look at the watch mid hour, odd hours across the next hour boundary,
+            //apart from the last which would run past the end of the day
+            boolean acrossHour = hour % 2 == 1 && hour < 23;
+            long window = mDayStart + hour * HOUR_MS + (acrossHour ? 57 : 10) * MINUTE_MS;
+            mScript.add(new long[]{window, EVENT_INTERACTIVE});
+            mScript.add(new long[]{window + 2 * MINUTE_MS + 250, EVENT_TAP});
+            //Reverts after the wrist is lowered, so on an ambient tick
+            mScript.add(new long[]{window + 4 * MINUTE_MS + 30 * SECOND_MS + 500, EVENT_TAP});
+            mScript.add(new long[]{window + WINDOW_MS, EVENT_AMBIENT});
+        }
+        //The engine is created shortly before the day starts, in ambient mode
+        long created = mDayStart - 30 * SECOND_MS;
+        mClock = new ManualClock(created);
+        mLastBurnInStep = created;
+        mSchedule = new FaceSchedule(mClock, mServices, mHost);
+        mSchedule.setTimerRunning(false);
+        mNextMinuteTick = TickMath.nextTickTime(created, MINUTE_MS);
+        mSchedule.scheduleChime(ADELAIDE);
+        replay(mDayStart + DAY_MS);
+    }
+
+    @Test
+    public void chimesEveryHourOnTheBoundary() {
+        assertEquals(24, mChimedHours.size());
+        for (int hour = 0; hour < 24; hour++) {
+            int expected = hour % 12 == 0 ? 12 : hour % 12;
+            assertEquals("Chime at hour " + hour, expected, (int) mChimedHours.get(hour));
+            assertEquals("Alarm for hour " + hour, mDayStart + hour * HOUR_MS, (long) mAlarmTimes.get(hour));
+        }
+        //A chime is late by no more than the alarm delivery, it never waits for a frame
+        for (long drift : mChimeDrift) {
+            assertEquals(ALARM_DELIVERY_MS, drift);
+        }
+    }
+
+    @Test
+    public void makesOnlyTheChimesBinderCalls() {
+        //The first alarm, then a vibration and the next alarm every hour
+        assertEquals(1 + 24 * 2, mServiceCalls);
+    }
+
+    @Test
+    public void drawsOncePerTickAndNoMore() {
+        //A mode change draws anyway, so what came due while waiting is run with it
+        assertTrue(mRedraws + " draws for " + mInteractiveSeconds + " interactive seconds and "
+                        + mAmbientTicks + " ambient ticks",
+                mRedraws <= mInteractiveSeconds + mAmbientTicks + mModeChanges);
+        //Only a stalled wakeup can skip a second, it catches up without drawing twice
+        assertTrue(mRedraws + " draws, " + mStalls + " stalls",
+                mRedraws >= mInteractiveSeconds + mAmbientTicks - mStalls);
+    }
+
+    @Test
+    public void everyWakeupDoesWorkAndTheTickKeepsItsPhase() {
+        assertEquals(mIdleWakeups + " of " + mWakeups + " wakeups had nothing to do", 0, mIdleWakeups);
+        //Lateness never pushes the next tick off the second
+        assertEquals(mOffPhaseWakeups + " wakeups off the second", 0, mOffPhaseWakeups);
+        //Lateness is measured from the deadline, so what the metrics get is what was injected
+        assertEquals(mInjectedLateness, mReportedLateness);
+        assertTrue(mStalls > 0);
+    }
+
+    @Test
+    public void burnInOffsetMovesAtLeastEveryMinute() {
+        //Ambient only wakes on the minute, so that is as often as it can be guaranteed
+        assertTrue(mMaxBurnInGap + "ms without a burn in step", mMaxBurnInGap <= MINUTE_MS + STALL_MS);
+    }
+
+    @Test
+    public void dateFormatRevertsAfterAMinute() {
+        assertEquals(48, mRevertDelays.size());
+        assertTrue(mClean);
+        for (long delay : mRevertDelays) {
+            //Runs with the tick before it is due in interactive mode, and waits for the next
+            //minute tick in ambient mode
+            assertTrue(delay + "ms to revert", delay > FaceSchedule.DATE_FORMAT_REVERT_MS - SECOND_MS);
+            assertTrue(delay + "ms to revert", delay <= FaceSchedule.DATE_FORMAT_REVERT_MS + MINUTE_MS);
+        }
+    }
+
+    /**
+     * Runs every event up to the end time in order. Scripted events go first, then the chime
+     * alarm, the handler and the ambient tick.
+     */
+    private void replay(long end) {
+        int script = 0;
+        while (true) {
+            long scripted = script < mScript.size() ? mScript.get(script)[0] : NONE;
+            long alarm = mAlarmAt == NONE ? NONE : mAlarmAt + ALARM_DELIVERY_MS;
+            long next = Math.min(Math.min(scripted, alarm), Math.min(mWakeupAt, mNextMinuteTick));
+            if (next >= end) {
+                return;
+            }
+            mClock.set(next);
+            if (next == scripted) {
+                runScripted((int) mScript.get(script++)[1]);
+            } else if (next == alarm) {
+                mAlarmAt = NONE;
+                mSchedule.onChimeAlarm();
+            } else if (next == mWakeupAt) {
+                wakeUp();
+            } else {
+                mNextMinuteTick = next + MINUTE_MS;
+                mAmbientTicks++;
+                mSchedule.onAmbientTick();
+            }
+        }
+    }
+
+    private void runScripted(int event) {
+        long now = mClock.currentTimeMillis();
+        switch (event) {
+            case EVENT_INTERACTIVE:
+                mModeChanges++;
+                mInteractiveSeconds += WINDOW_MS / SECOND_MS;
+                mNextMinuteTick = NONE;
+                mSchedule.setTimerRunning(true);
+                break;
+            case EVENT_AMBIENT:
+                mModeChanges++;
+                mNextMinuteTick = TickMath.nextTickTime(now, MINUTE_MS);
+                mSchedule.setTimerRunning(false);
+                break;
+            default:
+                mClean = !mClean;
+                mTapTime = now;
+                mSchedule.setCleanDateFormat(mClean);
+                break;
+        }
+    }
+
+    private void wakeUp() {
+        long deadline = mWakeupDeadline;
+        mWakeups++;
+        mInjectedLateness += mWakeupAt - deadline;
+        if (mWakeupAt - deadline == STALL_MS) {
+            mStalls++;
+        }
+        if (deadline % SECOND_MS != 0) {
+            mOffPhaseWakeups++;
+        }
+        mWakeupAt = NONE;
+        int redraws = mRedraws;
+        mReportedLateness += mSchedule.onWakeup();
+        if (mRedraws == redraws) {
+            mIdleWakeups++;
+        }
+    }
+}
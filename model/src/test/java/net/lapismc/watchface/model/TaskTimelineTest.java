@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskTimelineTest {
+
+    private static final int TICK = 0;
+    private static final int OFFSET = 1;
+    private static final int REVERT = 2;
+
+    private final TaskTimeline mTimeline = new TaskTimeline(3);
+
+    @Test
+    public void hasNoDeadlineUntilSomethingIsScheduled() {
+        assertEquals(TaskTimeline.NONE, mTimeline.nextDeadline());
+        assertEquals(0, mTimeline.collectDue(Long.MAX_VALUE - 1, 0));
+    }
+
+    @Test
+    public void nextDeadlineIsTheEarliestTask() {
+        mTimeline.schedule(TICK, 1000, 1000);
+        mTimeline.schedule(OFFSET, 30000, 30000);
+        mTimeline.schedule(REVERT, 500, 0);
+        assertEquals(500, mTimeline.nextDeadline());
+        mTimeline.cancel(REVERT);
+        assertEquals(1000, mTimeline.nextDeadline());
+    }
+
+    @Test
+    public void repeatingTasksMoveOnAndOneOffTasksClear() {
+        mTimeline.schedule(TICK, 1000, 1000);
+        mTimeline.schedule(REVERT, 1000, 0);
+        int due = mTimeline.collectDue(1000, 0);
+        assertTrue(TaskTimeline.isDue(due, TICK));
+        assertTrue(TaskTimeline.isDue(due, REVERT));
+        assertFalse(TaskTimeline.isDue(due, OFFSET));
+        assertEquals(2000, mTimeline.nextDeadline());
+        assertEquals(0, mTimeline.collectDue(1999, 0));
+    }
+
+    @Test
+    public void slackPullsNearbyTasksIntoThisWakeup() {
+        mTimeline.schedule(TICK, 1000, 1000);
+        mTimeline.schedule(OFFSET, 1400, 30000);
+        assertEquals(1 << TICK, mTimeline.collectDue(1000, 399));
+        mTimeline.schedule(TICK, 1000, 1000);
+        assertEquals(1 << TICK | 1 << OFFSET, mTimeline.collectDue(1000, 400));
+        //Running early keeps the task on its phase rather than moving it to now
+        assertEquals(2000, mTimeline.nextDeadline());
+        mTimeline.cancel(TICK);
+        assertEquals(31400, mTimeline.nextDeadline());
+    }
+
+    @Test
+    public void missedDeadlinesAreSkippedKeepingThePhase() {
+        mTimeline.schedule(OFFSET, 30000, 30000);
+        //A wakeup 95 seconds late runs the task once, not four times
+        assertEquals(1 << OFFSET, mTimeline.collectDue(125000, 0));
+        assertEquals(150000, mTimeline.nextDeadline());
+        assertEquals(0, mTimeline.collectDue(149999, 0));
+    }
+
+    @Test
+    public void reschedulingReplacesTheDeadline() {
+        mTimeline.schedule(REVERT, 5000, 0);
+        mTimeline.schedule(REVERT, 8000, 0);
+        assertEquals(0, mTimeline.collectDue(5000, 0));
+        assertEquals(1 << REVERT, mTimeline.collectDue(8000, 0));
+        assertEquals(TaskTimeline.NONE, mTimeline.nextDeadline());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreTasksThanFitInTheMask() {
+        new TaskTimeline(Integer.SIZE + 1);
+    }
+}
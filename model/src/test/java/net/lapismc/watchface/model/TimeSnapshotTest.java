@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSnapshotTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final Calendar mCalendar = Calendar.getInstance(UTC);
+    private final TimeSnapshot mTime = new TimeSnapshot();
+
+    @Before
+    public void setUp() {
+        mTime.setTimeZone(UTC);
+    }
+
+    private long at(int year, int month, int day, int hour, int minute, int second, int millis) {
+        mCalendar.clear();
+        mCalendar.set(year, month, day, hour, minute, second);
+        mCalendar.set(Calendar.MILLISECOND, millis);
+        return mCalendar.getTimeInMillis();
+    }
+
+    @Test
+    public void formatsTimeAndDates() {
+        assertTrue(mTime.update(at(2020, Calendar.JUNE, 15, 13, 5, 42, 500)));
+        assertEquals("01:05", mTime.getTimeText().toString());
+        assertEquals("Mon 15 Jun", mTime.getDateText(true).toString());
+        assertEquals("15/06/2020", mTime.getDateText(false).toString());
+        assertEquals(13, mTime.getHourOfDay());
+        assertEquals(5, mTime.getMinute());
+        assertEquals(42.5f, mTime.getSeconds(), 0.0001f);
+    }
+
+    @Test
+    public void showsTwelveForMidnightAndNoon() {
+        mTime.update(at(2020, Calendar.JANUARY, 1, 0, 30, 0, 0));
+        assertEquals("12:30", mTime.getTimeText().toString());
+        assertEquals("Wed 01 Jan", mTime.getDateText(true).toString());
+        mTime.update(at(2020, Calendar.JANUARY, 1, 12, 0, 0, 0));
+        assertEquals("12:00", mTime.getTimeText().toString());
+    }
+
+    @Test
+    public void onlyReportsAChangeWhenTheMinuteRollsOver() {
+        long minute = at(2020, Calendar.JUNE, 15, 9, 59, 0, 0);
+        assertTrue(mTime.update(minute));
+        assertEquals(minute, mTime.getMinuteStart());
+        assertFalse(mTime.update(minute + 1000));
+        assertFalse(mTime.update(minute + 59999));
+        assertEquals(59.999f, mTime.getSeconds(), 0.0001f);
+        assertEquals("09:59", mTime.getTimeText().toString());
+
+        assertTrue(mTime.update(minute + 60000));
+        assertEquals(minute + 60000, mTime.getMinuteStart());
+        assertEquals(0f, mTime.getSeconds(), 0f);
+        assertEquals("10:00", mTime.getTimeText().toString());
+    }
+
+    @Test
+    public void rollsTheDateOverAtMidnight() {
+        mTime.update(at(2020, Calendar.DECEMBER, 31, 23, 59, 59, 999));
+        assertEquals("Thu 31 Dec", mTime.getDateText(true).toString());
+        assertEquals("31/12/2020", mTime.getDateText(false).toString());
+        assertTrue(mTime.update(at(2021, Calendar.JANUARY, 1, 0, 0, 0, 0)));
+        assertEquals("Fri 01 Jan", mTime.getDateText(true).toString());
+        assertEquals("01/01/2021", mTime.getDateText(false).toString());
+    }
+
+    @Test
+    public void recomputesWhenTheClockGoesBack() {
+        long minute = at(2020, Calendar.JUNE, 15, 10, 0, 0, 0);
+        mTime.update(minute);
+        assertTrue(mTime.update(minute - 1));
+        assertEquals("09:59", mTime.getTimeText().toString());
+    }
+
+    @Test
+    public void recomputesWhenTheTimeZoneChanges() {
+        long now = at(2020, Calendar.JUNE, 15, 23, 30, 0, 0);
+        mTime.update(now);
+        //Adelaide is 9:30 ahead in June, which is already the next day
+        mTime.setTimeZone(TimeZone.getTimeZone("Australia/Adelaide"));
+        assertTrue(mTime.update(now));
+        assertEquals("09:00", mTime.getTimeText().toString());
+        assertEquals("Tue 16 Jun", mTime.getDateText(true).toString());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.lapismc.watchface.model;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WarmStartStoreTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private WarmStartStore mStore;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "warm_start.bin");
+        mStore = new WarmStartStore(mFolder.getRoot());
+    }
+
+    private static WarmStartStore.State settings() {
+        WarmStartStore.State state = new WarmStartStore.State();
+        state.textScale = 1.75f;
+        state.silent = true;
+        state.offsetStep = 1234;
+        state.batteryLevel = 42;
+        state.timeZoneId = "Australia/Adelaide";
+        return state;
+    }
+
+    private static WarmStartStore.State withSizes() {
+        WarmStartStore.State state = settings();
+        state.hasSizes = true;
+        state.styled = true;
+        state.mode = 4;
+        state.lowBattery = true;
+        state.timeText.append("10:42");
+        state.timeWidth = 251.5f;
+        state.timeHeight = 73;
+        state.dateText.append("Fri 16 Oct");
+        state.dateWidth = 120.25f;
+        state.dateHeight = 15;
+        state.batteryText.append("42%");
+        state.batteryWidth = 80f;
+        state.batteryHeight = 33;
+        return state;
+    }
+
+    @Test
+    public void loadsNothingWhenNothingWasSaved() {
+        assertNull(mStore.load());
+    }
+
+    @Test
+    public void roundTripsTheSettings() {
+        mStore.save(settings());
+        WarmStartStore.State loaded = mStore.load();
+        assertNotNull(loaded);
+        assertEquals(1.75f, loaded.textScale, 0f);
+        assertTrue(loaded.silent);
+        assertEquals(1234, loaded.offsetStep);
+        assertEquals(42, loaded.batteryLevel);
+        assertEquals("Australia/Adelaide", loaded.timeZoneId);
+        assertFalse(loaded.hasSizes);
+        assertEquals(0, loaded.timeText.length());
+    }
+
+    @Test
+    public void roundTripsTheTextSizes() {
+        mStore.save(withSizes());
+        WarmStartStore.State loaded = new WarmStartStore(mFolder.getRoot()).load();
+        assertNotNull(loaded);
+        assertTrue(loaded.hasSizes);
+        assertTrue(loaded.styled);
+        assertEquals(4, loaded.mode);
+        assertTrue(loaded.lowBattery);
+        assertEquals("10:42", loaded.timeText.toString());
+        assertEquals(251.5f, loaded.timeWidth, 0f);
+        assertEquals(73, loaded.timeHeight);
+        assertEquals("Fri 16 Oct", loaded.dateText.toString());
+        assertEquals(120.25f, loaded.dateWidth, 0f);
+        assertEquals(15, loaded.dateHeight);
+        assertEquals("42%", loaded.batteryText.toString());
+        assertEquals(80f, loaded.batteryWidth, 0f);
+        assertEquals(33, loaded.batteryHeight);
+    }
+
+    @Test
+    public void keepsTheFileSmall() {
+        mStore.save(withSizes());
+        assertTrue(mFile.length() + " bytes", mFile.length() < 256);
+    }
+
+    @Test
+    public void aNewSaveReplacesTheOldOne() {
+        mStore.save(withSizes());
+        WarmStartStore.State state = settings();
+        state.offsetStep = 7;
+        mStore.save(state);
+        WarmStartStore.State loaded = mStore.load();
+        assertEquals(7, loaded.offsetStep);
+        assertFalse(loaded.hasSizes);
+        assertFalse(new File(mFolder.getRoot(), "warm_start.bin.tmp").exists());
+    }
+
+    @Test
+    public void rejectsADamagedPayload() throws IOException {
+        mStore.save(withSizes());
+        //Just past the header, inside the text scale
+        flipByte(14);
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsADamagedChecksum() throws IOException {
+        mStore.save(withSizes());
+        flipByte(mFile.length() - 1);
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsAnotherVersion() throws IOException {
+        mStore.save(withSizes());
+        //The low byte of the version
+        flipByte(7);
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsATruncatedFile() throws IOException {
+        mStore.save(withSizes());
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsAFileThatIsNotOurs() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.write("not a warm start file at all".getBytes("UTF-8"));
+        }
+        assertRejected();
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    /**
+     * Checks that the file isn't loaded, and is deleted so it isn't read again next time.
+     */
+    private void assertRejected() {
+        assertNull(mStore.load());
+        assertFalse(mFile.exists());
+    }
+}